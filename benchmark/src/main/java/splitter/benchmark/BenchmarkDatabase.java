@@ -0,0 +1,82 @@
+package splitter.benchmark;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.io.fs.FileUtils;
+import org.neo4j.kernel.impl.transaction.log.checkpoint.CheckPointer;
+import org.neo4j.kernel.impl.transaction.log.checkpoint.SimpleTriggerInfo;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.NullLog;
+import splitter.SplitNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Embedded database in a temporary directory which is deleted on shutdown.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+    private final File directory;
+    private final GraphDatabaseService db;
+
+    private BenchmarkDatabase(File directory, GraphDatabaseService db) {
+        this.directory = directory;
+        this.db = db;
+    }
+
+    public static BenchmarkDatabase start() {
+        try {
+            File directory = Files.createTempDirectory("node-splitter-benchmark").toFile();
+            GraphDatabaseService db = new GraphDatabaseFactory()
+                    .newEmbeddedDatabaseBuilder(directory)
+                    .setConfig(GraphDatabaseSettings.pagecache_memory, "512m")
+                    .newGraphDatabase();
+            return new BenchmarkDatabase(directory, db);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public GraphDatabaseService getDb() {
+        return db;
+    }
+
+    /// procedures are called directly, as Neo4j calls them after injecting @Context fields
+    public SplitNode procedures() {
+        SplitNode procedures = new SplitNode();
+        procedures.db = db;
+        procedures.log = NullLog.getInstance();
+        return procedures;
+    }
+
+    /// flushes the page cache to store files and returns their total size without transaction logs
+    public long getStoreBytes() {
+        try {
+            ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(CheckPointer.class)
+                    .forceCheckPoint(new SimpleTriggerInfo("benchmark"));
+            try (Stream<Path> files = Files.walk(directory.toPath())) {
+                return files.filter(Files::isRegularFile)
+                        .filter(file -> !file.getFileName().toString().startsWith("neostore.transaction.db"))
+                        .mapToLong(file -> file.toFile().length())
+                        .sum();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        db.shutdown();
+        try {
+            FileUtils.deleteRecursively(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
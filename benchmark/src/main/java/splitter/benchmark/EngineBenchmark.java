@@ -0,0 +1,66 @@
+package splitter.benchmark;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.*;
+import splitter.SplitNode;
+import splitter.results.SplitNodeResult;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares core API and kernel API split engines, each iteration splits a freshly generated graph
+ * with splitter.splitNodes in one transaction.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class EngineBenchmark {
+    @Param({"core", "kernel"})
+    public String engine;
+
+    @Param({"2000"})
+    public int hubs;
+
+    @Param({"10", "100"})
+    public int degree;
+
+    private BenchmarkDatabase database;
+    private List<Long> hubIds;
+
+    @Setup(Level.Iteration)
+    public void createGraph() {
+        database = BenchmarkDatabase.start();
+        hubIds = new SyntheticGraph(hubs, degree, 10, 42).create(database.getDb());
+    }
+
+    @TearDown(Level.Iteration)
+    public void dropGraph() {
+        database.close();
+    }
+
+    @Benchmark
+    public long split() {
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("relationshipTypes", new ArrayList<>(Collections.singletonList(SyntheticGraph.REL.name())));
+        configuration.put("indexProperty", "index");
+        configuration.put("engine", engine);
+
+        SplitNode procedures = database.procedures();
+        try (Transaction tx = database.getDb().beginTx()) {
+            List<Node> nodes = hubIds.stream().map(database.getDb()::getNodeById).collect(Collectors.toList());
+            long createdNodes;
+            try (Stream<SplitNodeResult> results = procedures.splitNodes(nodes, configuration)) {
+                createdNodes = results.count();
+            }
+            tx.success();
+            return createdNodes;
+        }
+    }
+}
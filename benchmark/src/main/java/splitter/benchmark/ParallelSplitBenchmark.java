@@ -0,0 +1,74 @@
+package splitter.benchmark;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.*;
+import splitter.SplitNode;
+import splitter.results.SplitBatchResult;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares sequential batched splitting (parallelism = 0) with parallel splitting of the same synthetic graph.
+ * Each iteration splits a freshly generated graph once.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class ParallelSplitBenchmark {
+    @Param({"0", "2", "4", "8", "16"})
+    public int parallelism;
+
+    @Param({"20000"})
+    public int hubs;
+
+    @Param({"20"})
+    public int degree;
+
+    @Param({"10"})
+    public int clusterSize;
+
+    private BenchmarkDatabase database;
+    private List<Long> hubIds;
+
+    @Setup(Level.Iteration)
+    public void createGraph() {
+        database = BenchmarkDatabase.start();
+        hubIds = new SyntheticGraph(hubs, degree, clusterSize, 42).create(database.getDb());
+    }
+
+    @TearDown(Level.Iteration)
+    public void dropGraph() {
+        database.close();
+    }
+
+    @Benchmark
+    public long split() {
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("relationshipTypes", new ArrayList<>(Collections.singletonList(SyntheticGraph.REL.name())));
+        configuration.put("indexProperty", "index");
+        configuration.put("batchSize", 1000);
+        if (parallelism > 0)
+            configuration.put("parallelism", parallelism);
+
+        SplitNode procedures = database.procedures();
+        try (Transaction tx = database.getDb().beginTx()) {
+            List<Node> nodes = hubIds.stream().map(database.getDb()::getNodeById).collect(Collectors.toList());
+            Stream<SplitBatchResult> results = parallelism > 0
+                    ? procedures.splitNodesParallel(nodes, configuration)
+                    : procedures.splitNodesBatched(nodes, configuration);
+            long createdNodes;
+            try (Stream<SplitBatchResult> stream = results) {
+                createdNodes = stream.mapToLong(result -> result.createdNodes).sum();
+            }
+            tx.success();
+            return createdNodes;
+        }
+    }
+}
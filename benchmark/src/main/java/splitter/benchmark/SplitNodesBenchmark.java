@@ -0,0 +1,106 @@
+package splitter.benchmark;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.*;
+import splitter.SplitNode;
+import splitter.results.SplitNodeResult;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Splits batches of generated source nodes with splitter.splitNodes for each scenario of generated graph.
+ * Sources are linked to a pool of leaves which is rebuilt for each iteration, so leaf degrees do not grow during the trial,
+ * and are created before each invocation outside of the measured time.
+ * Reports throughput and latency percentiles per source node, allocation rate is reported with "-prof gc".
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SplitNodesBenchmark {
+    private static final int LEAVES = 10_000;
+    private static final int SOURCES_PER_INVOCATION = 10;
+
+    @Param({"constant", "uniform", "powerlaw", "types", "greedy", "properties", "supernodes"})
+    public String scenario;
+
+    @Param({"core", "kernel"})
+    public String engine;
+
+    private BenchmarkDatabase database;
+    private SyntheticGraph graph;
+    private Map<String, Object> configuration;
+    private List<Node> leaves;
+    private List<Long> sourceIds;
+
+    @Setup(Level.Trial)
+    public void startDatabase() {
+        database = BenchmarkDatabase.start();
+        graph = scenario(scenario);
+
+        configuration = new HashMap<>();
+        configuration.put("relationshipTypes", new ArrayList<>(graph.getRelationshipTypes()));
+        configuration.put("greedyRelationshipTypes", new ArrayList<>(graph.getGreedyRelationshipTypes()));
+        configuration.put("indexProperty", "index");
+        configuration.put("engine", engine);
+    }
+
+    @Setup(Level.Iteration)
+    public void createLeaves() {
+        leaves = graph.createLeaves(database.getDb(), LEAVES);
+    }
+
+    @Setup(Level.Invocation)
+    public void createSources() {
+        sourceIds = graph.createHubs(database.getDb(), leaves, SOURCES_PER_INVOCATION);
+    }
+
+    @TearDown(Level.Trial)
+    public void dropGraph() {
+        database.close();
+    }
+
+    static SyntheticGraph scenario(String scenario) {
+        switch (scenario) {
+            case "constant":
+                return new SyntheticGraph(20, 42);
+            case "uniform":
+                return new SyntheticGraph(20, 42).degreeDistribution(SyntheticGraph.UNIFORM);
+            case "powerlaw":
+                return new SyntheticGraph(20, 42).degreeDistribution(SyntheticGraph.POWER_LAW);
+            case "types":
+                return new SyntheticGraph(40, 42).relationshipTypes(8, 0);
+            case "greedy":
+                return new SyntheticGraph(40, 42).relationshipTypes(4, 2);
+            case "properties":
+                return new SyntheticGraph(20, 42).properties(40, 5);
+            case "supernodes":
+                return new SyntheticGraph(20, 42).degreeDistribution(SyntheticGraph.POWER_LAW).supernodes(100, 2000);
+            default:
+                throw new IllegalArgumentException("Unknown scenario " + scenario);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SOURCES_PER_INVOCATION)
+    public long splitNodes() {
+        SplitNode procedures = database.procedures();
+        try (Transaction tx = database.getDb().beginTx()) {
+            List<Node> nodes = new ArrayList<>(sourceIds.size());
+            for (long sourceId : sourceIds) {
+                nodes.add(database.getDb().getNodeById(sourceId));
+            }
+            long createdNodes;
+            try (Stream<SplitNodeResult> results = procedures.splitNodes(nodes, configuration)) {
+                createdNodes = results.count();
+            }
+            tx.success();
+            return createdNodes;
+        }
+    }
+}
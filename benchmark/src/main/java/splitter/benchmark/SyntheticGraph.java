@@ -0,0 +1,170 @@
+package splitter.benchmark;
+
+import org.neo4j.graphdb.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates hub nodes which are split by benchmarks.
+ * Hubs are grouped into clusters, each hub has incoming and outgoing relationships to leaves
+ * taken at random from the pool of its cluster, so hubs have common neighbours only within a cluster.
+ * Degree distribution, relationship types, properties and supernodes are configurable,
+ * the last greedyTypes of relationshipTypes types are split as "greedy".
+ */
+public class SyntheticGraph {
+    public static final Label HUB = Label.label("Hub");
+    public static final Label LEAF = Label.label("Leaf");
+    public static final RelationshipType REL = RelationshipType.withName("Rel");
+
+    public static final String CONSTANT = "constant";
+    public static final String UNIFORM = "uniform";
+    public static final String POWER_LAW = "powerlaw";
+
+    private final int hubs;
+    private final int degree;
+    private final int clusterSize;
+    private final Random random;
+    private String degreeDistribution = CONSTANT;
+    private int relationshipTypes = 1;
+    private int greedyTypes = 0;
+    private int hubProperties = 1;
+    private int relationshipProperties = 1;
+    private int supernodeEvery = 0;
+    private int supernodeDegree;
+    private long createdHubs;
+
+    public SyntheticGraph(int hubs, int degree, int clusterSize, long seed) {
+        this.hubs = hubs;
+        this.degree = degree;
+        this.clusterSize = clusterSize;
+        this.random = new Random(seed);
+    }
+
+    /// graph whose leaves and hubs are created on demand with createLeaves and createHubs
+    public SyntheticGraph(int degree, long seed) {
+        this(0, degree, 1, seed);
+    }
+
+    /// constant, uniform (between 1 and 2 * degree - 1) or powerlaw (Pareto with alpha 2 and mean degree)
+    public SyntheticGraph degreeDistribution(String distribution) {
+        if (!CONSTANT.equals(distribution) && !UNIFORM.equals(distribution) && !POWER_LAW.equals(distribution))
+            throw new IllegalArgumentException("Unknown degree distribution " + distribution);
+        this.degreeDistribution = distribution;
+        return this;
+    }
+
+    public SyntheticGraph relationshipTypes(int relationshipTypes, int greedyTypes) {
+        if (greedyTypes >= relationshipTypes)
+            throw new IllegalArgumentException("At least one relationship type should be non-greedy");
+        this.relationshipTypes = relationshipTypes;
+        this.greedyTypes = greedyTypes;
+        return this;
+    }
+
+    public SyntheticGraph properties(int hubProperties, int relationshipProperties) {
+        this.hubProperties = hubProperties;
+        this.relationshipProperties = relationshipProperties;
+        return this;
+    }
+
+    /// every supernodeEvery-th hub gets supernodeDegree relationships, 0 disables supernodes
+    public SyntheticGraph supernodes(int supernodeEvery, int supernodeDegree) {
+        this.supernodeEvery = supernodeEvery;
+        this.supernodeDegree = supernodeDegree;
+        return this;
+    }
+
+    /// names of "non-greedy" relationship types for splitter configuration
+    public List<String> getRelationshipTypes() {
+        List<String> types = new ArrayList<>();
+        for (int i = 0; i < relationshipTypes - greedyTypes; i++) {
+            types.add(typeName(i));
+        }
+        return types;
+    }
+
+    /// names of "greedy" relationship types for splitter configuration
+    public List<String> getGreedyRelationshipTypes() {
+        List<String> types = new ArrayList<>();
+        for (int i = relationshipTypes - greedyTypes; i < relationshipTypes; i++) {
+            types.add(typeName(i));
+        }
+        return types;
+    }
+
+    /// creates all clusters, returns ids of created hubs
+    public List<Long> create(GraphDatabaseService db) {
+        List<Long> hubIds = new ArrayList<>(hubs);
+        for (int from = 0; from < hubs; from += clusterSize) {
+            List<Node> leaves = createLeaves(db, Math.max(1, clusterSize * degree / 2));
+            hubIds.addAll(createHubs(db, leaves, Math.min(clusterSize, hubs - from)));
+        }
+        return hubIds;
+    }
+
+    /// creates a pool of leaves in one transaction
+    public List<Node> createLeaves(GraphDatabaseService db, int count) {
+        List<Node> leaves = new ArrayList<>(count);
+        try (Transaction tx = db.beginTx()) {
+            for (int i = 0; i < count; i++) {
+                leaves.add(db.createNode(LEAF));
+            }
+            tx.success();
+        }
+        return leaves;
+    }
+
+    /// creates hubs linked to leaves of the pool in one transaction, returns their ids
+    public List<Long> createHubs(GraphDatabaseService db, List<Node> leaves, int count) {
+        List<Long> hubIds = new ArrayList<>(count);
+        try (Transaction tx = db.beginTx()) {
+            for (int i = 0; i < count; i++) {
+                hubIds.add(createHub(db, leaves).getId());
+            }
+            tx.success();
+        }
+        return hubIds;
+    }
+
+    private Node createHub(GraphDatabaseService db, List<Node> leaves) {
+        long number = createdHubs++;
+        Node hub = db.createNode(HUB);
+        hub.setProperty("name", "hub" + number);
+        for (int p = 1; p < hubProperties; p++) {
+            hub.setProperty("property" + p, "value" + p + "-" + number);
+        }
+        int hubDegree = nextDegree(number);
+        for (int r = 0; r < hubDegree; r++) {
+            Node leaf = leaves.get(random.nextInt(leaves.size()));
+            RelationshipType type = relationshipTypes == 1 ? REL : RelationshipType.withName(typeName(random.nextInt(relationshipTypes)));
+            Relationship relationship = r % 2 == 0 ? leaf.createRelationshipTo(hub, type) : hub.createRelationshipTo(leaf, type);
+            relationship.setProperty("weight", r);
+            for (int p = 1; p < relationshipProperties; p++) {
+                relationship.setProperty("property" + p, r);
+            }
+        }
+        return hub;
+    }
+
+    private int nextDegree(long number) {
+        if (supernodeEvery > 0 && (number + 1) % supernodeEvery == 0)
+            return supernodeDegree;
+        switch (degreeDistribution) {
+            case UNIFORM:
+                return 1 + random.nextInt(Math.max(1, 2 * degree - 1));
+            case POWER_LAW:
+                //Pareto distribution with alpha = 2 has mean 2 * minimum, long tail is capped to keep iterations comparable
+                double minimum = degree / 2.0;
+                double sample = minimum / Math.sqrt(1 - random.nextDouble());
+                return (int) Math.max(1, Math.min(sample, 100.0 * degree));
+            default:
+                return degree;
+        }
+    }
+
+    private static String typeName(int type) {
+        return type == 0 ? REL.name() : REL.name() + type;
+    }
+}
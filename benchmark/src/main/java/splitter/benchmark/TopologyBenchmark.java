@@ -0,0 +1,154 @@
+package splitter.benchmark;
+
+import org.neo4j.graphdb.*;
+import org.neo4j.helpers.collection.Iterables;
+import org.openjdk.jmh.annotations.*;
+import splitter.SplitNode;
+import splitter.results.SplitNodeResult;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares cartesian and junction topologies of split nodes: time of splitting, count of relationships and size
+ * of store files after splitting (reported as secondary results of split), and time of traversal from leaves
+ * through split nodes to other leaves.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class TopologyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Graph {
+        @Param({"cartesian", "junction"})
+        public String topology;
+
+        @Param({"1000"})
+        public int hubs;
+
+        @Param({"10", "100"})
+        public int degree;
+
+        BenchmarkDatabase database;
+        List<Long> hubIds;
+
+        void create() {
+            database = BenchmarkDatabase.start();
+            hubIds = new SyntheticGraph(hubs, degree, 10, 42).create(database.getDb());
+        }
+
+        long split() {
+            Map<String, Object> configuration = new HashMap<>();
+            configuration.put("relationshipTypes", new ArrayList<>(Collections.singletonList(SyntheticGraph.REL.name())));
+            configuration.put("indexProperty", "index");
+            configuration.put("topology", topology);
+
+            SplitNode procedures = database.procedures();
+            try (Transaction tx = database.getDb().beginTx()) {
+                List<Node> nodes = hubIds.stream().map(database.getDb()::getNodeById).collect(Collectors.toList());
+                long createdNodes;
+                try (Stream<SplitNodeResult> results = procedures.splitNodes(nodes, configuration)) {
+                    createdNodes = results.count();
+                }
+                tx.success();
+                return createdNodes;
+            }
+        }
+
+        void drop() {
+            database.close();
+        }
+    }
+
+    /// graph which is generated and split again for each iteration of split benchmark
+    public static class FreshGraph extends Graph {
+        @Setup(Level.Iteration)
+        public void setUp() {
+            create();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            drop();
+        }
+    }
+
+    /// graph which is generated and split once for all iterations of traversal benchmark
+    public static class SplitGraph extends Graph {
+        List<Long> leafIds;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            create();
+            split();
+            try (Transaction tx = database.getDb().beginTx()) {
+                leafIds = database.getDb().findNodes(SyntheticGraph.LEAF).stream()
+                        .limit(1000).map(Node::getId).collect(Collectors.toList());
+                tx.success();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            drop();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class StoreSize {
+        public long relationships;
+        public long storeBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            relationships = 0;
+            storeBytes = 0;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public long split(FreshGraph graph, StoreSize size) {
+        long createdNodes = graph.split();
+        try (Transaction tx = graph.database.getDb().beginTx()) {
+            size.relationships = Iterables.count(graph.database.getDb().getAllRelationships());
+            tx.success();
+        }
+        size.storeBytes = graph.database.getStoreBytes();
+        return createdNodes;
+    }
+
+    /// counts leaves reachable from each sampled leaf through split nodes of a single hub
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public long traverse(SplitGraph graph) {
+        GraphDatabaseService db = graph.database.getDb();
+        long reachedLeaves = 0;
+        try (Transaction tx = db.beginTx()) {
+            for (long leafId : graph.leafIds) {
+                Set<Long> visited = new HashSet<>();
+                Deque<Node> queue = new ArrayDeque<>();
+                queue.add(db.getNodeById(leafId));
+                while (!queue.isEmpty()) {
+                    Node current = queue.poll();
+                    for (Relationship relationship : current.getRelationships(Direction.OUTGOING, SyntheticGraph.REL)) {
+                        Node next = relationship.getEndNode();
+                        if (!visited.add(next.getId()))
+                            continue;
+                        if (next.hasLabel(SyntheticGraph.LEAF))
+                            reachedLeaves++;
+                        else
+                            queue.add(next);
+                    }
+                }
+            }
+            tx.success();
+        }
+        return reachedLeaves;
+    }
+}
@@ -0,0 +1,136 @@
+package splitter;
+
+import org.eclipse.collections.api.set.primitive.LongSet;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import splitter.config.SplitNodeConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks which nodes should be split and keeps counters common for all split engines.
+ */
+abstract class AbstractSplitEngine implements SplitEngine {
+    private static final int MAX_SKIPPED_MESSAGES = 10;
+
+    protected final GraphDatabaseService db;
+    protected final SplitNodeConfiguration config;
+    protected long splitNodes;
+    protected long createdNodes;
+    protected long entryNodes;
+    protected long exitNodes;
+    protected long prototypeNodes;
+    protected long createdRelationships;
+    protected final LongHashSet createdNodeIds = new LongHashSet();
+    protected long scannedRelationships;
+    protected long copiedProperties;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private long skippedNodes;
+    private final List<String> skippedMessages = new ArrayList<>();
+
+    AbstractSplitEngine(GraphDatabaseService db, SplitNodeConfiguration config) {
+        this.db = db;
+        this.config = config;
+    }
+
+    @Override
+    public final List<Node> split(Node node) {
+        if (node == null || node.getDegree() == 0)
+            return Collections.emptyList();
+
+        //skip nodes which have no relationships of configured types without reading relationships
+        if (!RelationshipBuckets.hasSplitRelationships(node, config))
+            return Collections.emptyList();
+
+        //skip nodes which would create too many relationships
+        if (exceedsLimits(node))
+            return Collections.emptyList();
+
+        return splitNode(node);
+    }
+
+    /// splits the node which has relationships of configured types
+    protected abstract List<Node> splitNode(Node node);
+
+    /// adds time since start to the phase, returns current time as start of the next phase
+    protected long endPhase(Phase phase, long start) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - start;
+        return now;
+    }
+
+    private boolean exceedsLimits(Node node) {
+        if (config.getMaxCreatedRelationships() == Long.MAX_VALUE && config.getMaxFanOut() == Long.MAX_VALUE)
+            return false;
+        String reason = SplitPlan.of(node, config).exceededLimit();
+        if (reason == null)
+            return false;
+        skippedNodes++;
+        if (skippedMessages.size() < MAX_SKIPPED_MESSAGES)
+            skippedMessages.add("Node " + node.getId() + " skipped: " + reason);
+        return true;
+    }
+
+    @Override
+    public long getSplitNodes() {
+        return splitNodes;
+    }
+
+    @Override
+    public long getCreatedNodes() {
+        return createdNodes;
+    }
+
+    @Override
+    public long getEntryNodes() {
+        return entryNodes;
+    }
+
+    @Override
+    public long getExitNodes() {
+        return exitNodes;
+    }
+
+    @Override
+    public long getPrototypeNodes() {
+        return prototypeNodes;
+    }
+
+    @Override
+    public long getCreatedRelationships() {
+        return createdRelationships;
+    }
+
+    @Override
+    public LongSet getCreatedNodeIds() {
+        return createdNodeIds;
+    }
+
+    @Override
+    public long getSkippedNodes() {
+        return skippedNodes;
+    }
+
+    @Override
+    public List<String> getSkippedMessages() {
+        return skippedMessages;
+    }
+
+    @Override
+    public long getScannedRelationships() {
+        return scannedRelationships;
+    }
+
+    @Override
+    public long getCopiedProperties() {
+        return copiedProperties;
+    }
+
+    @Override
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+}
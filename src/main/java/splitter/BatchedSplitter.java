@@ -0,0 +1,161 @@
+package splitter;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import splitter.config.SplitNodeConfiguration;
+import splitter.results.SplitBatchResult;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Splits nodes in batches, each batch is committed in its own top-level transaction.
+ * Procedure thread is bound to the caller's transaction, so batches are executed on a separate thread
+ * and only ids of source nodes are passed to it.
+ */
+class BatchedSplitter {
+    private static final int MAX_ERRORS = 10;
+
+    private final GraphDatabaseService db;
+    private final SplitNodeConfiguration config;
+    private final SplitStatistics statistics;
+    //nodes with higher ids were created after the call started, -1 if created nodes are not tracked
+    private long highestSourceId = -1;
+    //ids of created nodes which reuse ids of deleted nodes and are not passed by the search for source nodes yet
+    private final TreeSet<Long> reusedIds = new TreeSet<>();
+    private long searchPosition = -1;
+
+    BatchedSplitter(GraphDatabaseService db, SplitNodeConfiguration config, SplitStatistics statistics) {
+        this.db = db;
+        this.config = config;
+        this.statistics = statistics;
+    }
+
+    /// tells nodes created by committed batches apart from source nodes found later by a search in ascending id order,
+    /// highestSourceId is the highest node id when the call starts
+    BatchedSplitter trackCreatedNodes(long highestSourceId) {
+        this.highestSourceId = highestSourceId;
+        return this;
+    }
+
+    /// returns lazy stream with summary for each batch, next batch is split when previous result is consumed
+    Stream<SplitBatchResult> split(Iterator<Long> nodeIds) {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Iterator<SplitBatchResult> batches = new Iterator<SplitBatchResult>() {
+            private long batch;
+
+            @Override
+            public boolean hasNext() {
+                return nodeIds.hasNext();
+            }
+
+            @Override
+            public SplitBatchResult next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                List<Long> ids = new ArrayList<>(Math.min(config.getBatchSize(), 10_000));
+                while (ids.size() < config.getBatchSize() && nodeIds.hasNext()) {
+                    ids.add(nodeIds.next());
+                }
+                long batchNumber = batch++;
+                return await(executor.submit(() -> splitBatch(0, batchNumber, ids)));
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED), false)
+                .onClose(executor::shutdownNow);
+    }
+
+    /// splits batch of nodes in one transaction, if it fails then splits each node in its own transaction
+    /// to find out failing nodes and commit the rest
+    SplitBatchResult splitBatch(long partition, long batch, List<Long> ids) {
+        long start = System.currentTimeMillis();
+        SplitEngine splitter = SplitEngine.create(db, config);
+        try (Transaction tx = db.beginTx()) {
+            for (long id : ids) {
+                splitter.split(db.getNodeById(id));
+            }
+            tx.success();
+        } catch (RuntimeException e) {
+            return splitSeparately(partition, batch, ids, start);
+        }
+        addCreatedNodes(splitter);
+        statistics.add(splitter);
+        List<String> errors = new ArrayList<>(splitter.getSkippedMessages());
+        return new SplitBatchResult(partition, batch, ids.size(), splitter.getCreatedNodes(), splitter.getCreatedRelationships(),
+                System.currentTimeMillis() - start, 0, splitter.getSkippedNodes(), errors);
+    }
+
+    private SplitBatchResult splitSeparately(long partition, long batch, List<Long> ids, long start) {
+        long createdNodes = 0;
+        long createdRelationships = 0;
+        long failedNodes = 0;
+        long skippedNodes = 0;
+        Set<String> errors = new LinkedHashSet<>();
+        for (long id : ids) {
+            SplitEngine splitter = SplitEngine.create(db, config);
+            try (Transaction tx = db.beginTx()) {
+                splitter.split(db.getNodeById(id));
+                tx.success();
+            } catch (RuntimeException e) {
+                failedNodes++;
+                if (errors.size() < MAX_ERRORS)
+                    errors.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+                continue;
+            }
+            addCreatedNodes(splitter);
+            statistics.add(splitter);
+            createdNodes += splitter.getCreatedNodes();
+            createdRelationships += splitter.getCreatedRelationships();
+            skippedNodes += splitter.getSkippedNodes();
+            for (String message : splitter.getSkippedMessages()) {
+                if (errors.size() < MAX_ERRORS)
+                    errors.add(message);
+            }
+        }
+        return new SplitBatchResult(partition, batch, ids.size(), createdNodes, createdRelationships,
+                System.currentTimeMillis() - start, failedNodes, skippedNodes, new ArrayList<>(errors));
+    }
+
+    /// created nodes get new ids above highestSourceId or reuse ids of deleted nodes, only reused ids which the search
+    /// has not passed yet are kept, ids of deleted source nodes are behind the search, so memory does not grow with the source nodes
+    private void addCreatedNodes(SplitEngine splitter) {
+        if (highestSourceId < 0)
+            return;
+        synchronized (this) {
+            splitter.getCreatedNodeIds().forEach(id -> {
+                if (id <= highestSourceId && id > searchPosition)
+                    reusedIds.add(id);
+            });
+        }
+    }
+
+    /// returns true if the node was created by a committed batch of this splitter, nodes are expected in ascending id order
+    synchronized boolean isCreatedNode(long id) {
+        if (highestSourceId < 0)
+            return false;
+        if (id > highestSourceId || reusedIds.remove(id))
+            return true;
+        searchPosition = Math.max(searchPosition, id);
+        reusedIds.headSet(searchPosition).clear();
+        return false;
+    }
+
+    /// count of created node ids which are kept to recognize them later
+    synchronized int getTrackedNodeIds() {
+        return reusedIds.size();
+    }
+
+    static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for batch", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to split batch", e.getCause());
+        }
+    }
+}
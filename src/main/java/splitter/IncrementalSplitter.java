@@ -0,0 +1,519 @@
+package splitter;
+
+import org.neo4j.graphdb.*;
+import org.neo4j.helpers.collection.Iterables;
+import splitter.config.SplitNodeConfiguration;
+
+import java.util.*;
+
+/**
+ * Splits relationships which were added to nodes of an already split family into new entry and exit nodes,
+ * as if they had existed when the family was split.
+ * Entry nodes of a type are linked to all exit nodes they need and exit nodes are linked from all entry nodes they need,
+ * so the nodes to link are read from the links of one representative entry or exit node per type, or from the junction node.
+ * Members which get new relationships are classified first, then other members until representatives are found,
+ * so the cost grows with the change, not with the family. A family without a representative of the needed side
+ * is classified member by member.
+ * Members are classified, then the nodes which were read and all nodes which get new relationships are locked in ascending id order
+ * and members are classified again, the call fails if the family was changed in between, so it can be retried.
+ */
+class IncrementalSplitter {
+    private final GraphDatabaseService db;
+    private final SplitNodeConfiguration config;
+    private final NeighbourLocks locks;
+    private final Set<Long> familyIds = new HashSet<>();
+    private final List<Node> members = new ArrayList<>();
+    //the first entry and exit member found for each type, their links lead to all nodes which new nodes are linked to
+    private final Map<String, Node> entryRepresentatives = new HashMap<>();
+    private final Map<String, Node> exitRepresentatives = new HashMap<>();
+    //members by relationship type, entry members with their only relationship from outside of the family,
+    //only filled if every member is classified
+    private boolean classifiedAll;
+    private final Map<String, List<Node>> entryNodes = new HashMap<>();
+    private final Map<String, List<RelationshipSnapshot>> entryRelationships = new HashMap<>();
+    private final Map<String, List<Node>> exitNodes = new HashMap<>();
+    private final Map<String, Node> junctionNodes = new HashMap<>();
+    //members whose relationships were read
+    private final Set<Long> readIds = new HashSet<>();
+    private Node template;
+    private long createdEntryNodes;
+    private long createdExitNodes;
+    private long createdRelationships;
+    private long skippedRelationships;
+    private long scannedRelationships;
+    private long copiedProperties;
+    private Integer minIndex;
+    private Integer maxIndex;
+
+    IncrementalSplitter(GraphDatabaseService db, SplitNodeConfiguration config) {
+        this.db = db;
+        this.config = config;
+        this.locks = new NeighbourLocks(db);
+    }
+
+    void split(List<Node> family, List<Relationship> relationships) {
+        try (Transaction tx = db.beginTx()) {
+            split(tx, family, relationships);
+            tx.success();
+        }
+    }
+
+    private void split(Transaction tx, List<Node> family, List<Relationship> relationships) {
+        Set<Long> newRelationshipIds = new HashSet<>();
+        for (Relationship relationship : relationships) {
+            newRelationshipIds.add(relationship.getId());
+        }
+        Set<String> types = classifiedTypes(relationships);
+        classify(family, relationships, types, newRelationshipIds);
+        if (template == null) {
+            //family has no entry or exit nodes which new relationships could be linked to
+            skippedRelationships += relationships.size();
+            return;
+        }
+        Set<Long> lockedIds = lockIds(relationships, newRelationshipIds);
+        locks.acquire(tx, template, toSortedArray(lockedIds));
+
+        //members are classified again under the locks, the first classification only found the nodes to lock
+        clearClassification();
+        classify(family, relationships, types, newRelationshipIds);
+        if (template == null || !lockedIds.containsAll(lockIds(relationships, newRelationshipIds)))
+            throw new RuntimeException("Family was changed by a concurrent transaction before it was locked, call the procedure again");
+        int index = nextIndex(lockedIds);
+
+        List<Relationship> incoming = new ArrayList<>();
+        List<Relationship> outgoing = new ArrayList<>();
+        for (Relationship relationship : relationships) {
+            if (isIncoming(relationship))
+                incoming.add(relationship);
+            else if (isOutgoing(relationship))
+                outgoing.add(relationship);
+            else
+                //new relationships which are not linked to the family or are not split are left as is
+                skippedRelationships++;
+        }
+        List<RelationshipSnapshot> ignoredIncoming = ignoredRelationships(template, Direction.INCOMING, newRelationshipIds);
+        List<RelationshipSnapshot> ignoredOutgoing = ignoredRelationships(template, Direction.OUTGOING, newRelationshipIds);
+
+        //labels and properties of the family are copied from one of its members
+        Label[] labels = Iterables.asArray(Label.class, template.getLabels());
+        Map<String, Object> properties = template.getAllProperties();
+        if (config.getIndexPropertyName() != null)
+            properties.remove(config.getIndexPropertyName());
+
+        for (Relationship relationship : incoming) {
+            String type = relationship.getType().name();
+            List<Node> targets = linkTargets(type);
+            if (targets.isEmpty()) {
+                skippedRelationships++;
+                continue;
+            }
+            RelationshipSnapshot snapshot = RelationshipSnapshot.of(relationship, Direction.INCOMING);
+            Node entryNode = createSplitNode(labels, properties, index++);
+            createRelationship(snapshot.getOtherNode(), entryNode, snapshot);
+            for (Node target : targets) {
+                createRelationship(entryNode, target, snapshot);
+            }
+            repair(entryNode, ignoredIncoming, ignoredOutgoing);
+            relationship.delete();
+            createdEntryNodes++;
+            //new exit nodes are linked to new entry nodes as well, representatives find them by their links
+            familyIds.add(entryNode.getId());
+            if (classifiedAll) {
+                entryNodes.computeIfAbsent(type, t -> new ArrayList<>()).add(entryNode);
+                entryRelationships.computeIfAbsent(type, t -> new ArrayList<>()).add(snapshot);
+            }
+        }
+
+        for (Relationship relationship : outgoing) {
+            String type = relationship.getType().name();
+            List<Node> sources = new ArrayList<>();
+            List<RelationshipSnapshot> sourceRelationships = new ArrayList<>();
+            linkSources(type, sources, sourceRelationships);
+            if (sources.isEmpty()) {
+                skippedRelationships++;
+                continue;
+            }
+            RelationshipSnapshot snapshot = RelationshipSnapshot.of(relationship, Direction.OUTGOING);
+            Node exitNode = createSplitNode(labels, properties, index++);
+            createRelationship(exitNode, snapshot.getOtherNode(), snapshot);
+            for (int i = 0; i < sources.size(); i++) {
+                RelationshipSnapshot sourceRelationship = sourceRelationships.get(i);
+                if (sourceRelationship == null) {
+                    //junction nodes are linked to exit nodes without properties
+                    sources.get(i).createRelationshipTo(exitNode, relationship.getType());
+                    createdRelationships++;
+                } else {
+                    createRelationship(sources.get(i), exitNode, sourceRelationship);
+                }
+            }
+            repair(exitNode, ignoredIncoming, ignoredOutgoing);
+            relationship.delete();
+            createdExitNodes++;
+        }
+    }
+
+    private boolean isIncoming(Relationship relationship) {
+        return isSplitType(relationship) && familyIds.contains(relationship.getEndNodeId()) && !familyIds.contains(relationship.getStartNodeId());
+    }
+
+    private boolean isOutgoing(Relationship relationship) {
+        return isSplitType(relationship) && familyIds.contains(relationship.getStartNodeId()) && !familyIds.contains(relationship.getEndNodeId());
+    }
+
+    private boolean isSplitType(Relationship relationship) {
+        String type = relationship.getType().name();
+        return config.getRelationshipTypes().contains(type) || config.getGreedyRelationshipTypes().contains(type);
+    }
+
+    private void clearClassification() {
+        familyIds.clear();
+        members.clear();
+        entryRepresentatives.clear();
+        exitRepresentatives.clear();
+        classifiedAll = false;
+        entryNodes.clear();
+        entryRelationships.clear();
+        exitNodes.clear();
+        junctionNodes.clear();
+        readIds.clear();
+        template = null;
+    }
+
+    /// returns types of new relationships and types of nodes they may be linked to
+    private Set<String> classifiedTypes(List<Relationship> relationships) {
+        Set<String> types = new HashSet<>();
+        for (Relationship relationship : relationships) {
+            String type = relationship.getType().name();
+            types.add(type);
+            //"greedy" entry nodes are linked to "non-greedy" exit nodes
+            if (config.getGreedyRelationshipTypes().contains(type))
+                types.addAll(config.getRelationshipTypes());
+            else if (config.getRelationshipTypes().contains(type))
+                types.addAll(config.getGreedyRelationshipTypes());
+        }
+        types.retainAll(splitTypes());
+        return types;
+    }
+
+    /// finds representatives of the types, members which get new relationships are classified first,
+    /// other members only until every new relationship has a representative to be linked through
+    private void classify(List<Node> family, List<Relationship> relationships, Set<String> types, Set<Long> newRelationshipIds) {
+        for (Node node : family) {
+            if (node != null && familyIds.add(node.getId()))
+                members.add(node);
+        }
+        List<Node> candidates = new ArrayList<>();
+        for (Relationship relationship : relationships) {
+            if (isIncoming(relationship))
+                candidates.add(relationship.getEndNode());
+            else if (isOutgoing(relationship))
+                candidates.add(relationship.getStartNode());
+        }
+        candidates.addAll(members);
+        for (Node member : candidates) {
+            if (hasRepresentatives(relationships))
+                return;
+            if (readIds.contains(member.getId()))
+                continue;
+            for (String type : types) {
+                classify(member, RelationshipType.withName(type), newRelationshipIds);
+            }
+        }
+        if (hasRepresentatives(relationships))
+            return;
+        //representatives do not know all nodes to link, e.g. no member is an entry node of the type of a new incoming relationship
+        classifiedAll = true;
+        readIds.clear();
+        for (Node member : members) {
+            for (String type : types) {
+                classify(member, RelationshipType.withName(type), newRelationshipIds);
+            }
+        }
+    }
+
+    /// returns true if each new relationship of the family has a representative or a junction node to find the nodes to link
+    private boolean hasRepresentatives(List<Relationship> relationships) {
+        for (Relationship relationship : relationships) {
+            String type = relationship.getType().name();
+            boolean incoming = isIncoming(relationship);
+            if (!incoming && !isOutgoing(relationship))
+                continue;
+            if (config.isJunctionTopology() ? !junctionNodes.containsKey(type)
+                    : (incoming ? entryRepresentatives.get(type) : exitRepresentative(type)) == null)
+                return false;
+        }
+        return true;
+    }
+
+    /// exit nodes of a "greedy" type and of all "non-greedy" types are linked from all entry nodes of the "greedy" type
+    private Node exitRepresentative(String type) {
+        Node exit = exitRepresentatives.get(type);
+        if (exit != null || !config.getGreedyRelationshipTypes().contains(type))
+            return exit;
+        for (String nonGreedyType : config.getRelationshipTypes()) {
+            exit = exitRepresentatives.get(nonGreedyType);
+            if (exit != null)
+                return exit;
+        }
+        return null;
+    }
+
+    /// member is an entry node of the type if its incoming relationship comes from outside of the family
+    /// and an exit node if its outgoing relationship goes outside, the shorter side is read first.
+    /// In junction topology the other side is read as well, so the junction node is found from entry nodes too
+    private void classify(Node member, RelationshipType type, Set<Long> newRelationshipIds) {
+        readIds.add(member.getId());
+        int in = member.getDegree(type, Direction.INCOMING);
+        int out = member.getDegree(type, Direction.OUTGOING);
+        if (in == 0 && out == 0)
+            return;
+        Direction first = in <= out ? Direction.INCOMING : Direction.OUTGOING;
+        boolean classified = classify(member, type, first, newRelationshipIds);
+        if (!classified || (config.isJunctionTopology() && !junctionNodes.containsKey(type.name())))
+            classify(member, type, first.reverse(), newRelationshipIds);
+    }
+
+    private boolean classify(Node member, RelationshipType type, Direction direction, Set<Long> newRelationshipIds) {
+        for (Relationship relationship : member.getRelationships(type, direction)) {
+            scannedRelationships++;
+            if (newRelationshipIds.contains(relationship.getId()))
+                continue;
+            Node other = relationship.getOtherNode(member);
+            if (other.hasLabel(SplitEngine.JUNCTION_LABEL)) {
+                junctionNodes.putIfAbsent(type.name(), other);
+                continue;
+            }
+            if (familyIds.contains(other.getId()))
+                continue;
+            if (template == null)
+                template = member;
+            if (direction == Direction.INCOMING) {
+                entryRepresentatives.putIfAbsent(type.name(), member);
+                if (classifiedAll) {
+                    entryNodes.computeIfAbsent(type.name(), t -> new ArrayList<>()).add(member);
+                    entryRelationships.computeIfAbsent(type.name(), t -> new ArrayList<>()).add(RelationshipSnapshot.of(relationship, direction));
+                }
+            } else {
+                exitRepresentatives.putIfAbsent(type.name(), member);
+                if (classifiedAll)
+                    exitNodes.computeIfAbsent(type.name(), t -> new ArrayList<>()).add(member);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /// returns nodes which a new entry node of the type is linked to
+    private List<Node> linkTargets(String type) {
+        if (config.isJunctionTopology()) {
+            Node junction = junctionNodes.get(type);
+            return junction == null ? Collections.emptyList() : Collections.singletonList(junction);
+        }
+        if (!classifiedAll) {
+            //an entry node is linked to exit nodes of its type and, for a "greedy" type, of all "non-greedy" types
+            List<Node> targets = new ArrayList<>();
+            Node entry = entryRepresentatives.get(type);
+            if (entry != null) {
+                for (Relationship link : entry.getRelationships(Direction.OUTGOING, RelationshipType.withName(type))) {
+                    scannedRelationships++;
+                    if (familyIds.contains(link.getEndNodeId()))
+                        targets.add(link.getEndNode());
+                }
+            }
+            return targets;
+        }
+        List<Node> targets = new ArrayList<>(exitNodes.getOrDefault(type, Collections.emptyList()));
+        if (config.getGreedyRelationshipTypes().contains(type)) {
+            //"greedy" entry nodes are linked to exit nodes of all "non-greedy" types
+            for (String nonGreedyType : config.getRelationshipTypes()) {
+                targets.addAll(exitNodes.getOrDefault(nonGreedyType, Collections.emptyList()));
+            }
+        }
+        return targets;
+    }
+
+    /// collects nodes which are linked to a new exit node of the type with relationships which are copied for the links,
+    /// null relationship means a link without properties
+    private void linkSources(String type, List<Node> sources, List<RelationshipSnapshot> sourceRelationships) {
+        if (config.isJunctionTopology()) {
+            Node junction = junctionNodes.get(type);
+            if (junction != null) {
+                sources.add(junction);
+                sourceRelationships.add(null);
+            }
+            return;
+        }
+        if (!classifiedAll) {
+            //links are copies of the relationships of their entry nodes, exit nodes of "non-greedy" types
+            //are linked from entry nodes of all "greedy" types as well
+            Node exit = exitRepresentative(type);
+            if (exit == null)
+                return;
+            List<String> linkTypes = new ArrayList<>();
+            linkTypes.add(type);
+            if (config.getRelationshipTypes().contains(type))
+                linkTypes.addAll(config.getGreedyRelationshipTypes());
+            for (String linkType : linkTypes) {
+                for (Relationship link : exit.getRelationships(Direction.INCOMING, RelationshipType.withName(linkType))) {
+                    scannedRelationships++;
+                    if (familyIds.contains(link.getStartNodeId())) {
+                        sources.add(link.getStartNode());
+                        sourceRelationships.add(RelationshipSnapshot.of(link, Direction.INCOMING));
+                    }
+                }
+            }
+            return;
+        }
+        sources.addAll(entryNodes.getOrDefault(type, Collections.emptyList()));
+        sourceRelationships.addAll(entryRelationships.getOrDefault(type, Collections.emptyList()));
+        if (config.getRelationshipTypes().contains(type)) {
+            //exit nodes of "non-greedy" types are linked from entry nodes of all "greedy" types
+            for (String greedyType : config.getGreedyRelationshipTypes()) {
+                sources.addAll(entryNodes.getOrDefault(greedyType, Collections.emptyList()));
+                sourceRelationships.addAll(entryRelationships.getOrDefault(greedyType, Collections.emptyList()));
+            }
+        }
+    }
+
+    /// indexes of a family are assigned from startIndex without gaps by splitting and resplitting, so the next index
+    /// follows the count of indexed members; indexes of the members which were read or are linked are checked as well
+    private int nextIndex(Set<Long> touchedIds) {
+        int index = config.getStartIndex();
+        String indexProperty = config.getIndexPropertyName();
+        if (indexProperty == null)
+            return index;
+        int indexedMembers = familyIds.size();
+        for (Node junction : junctionNodes.values()) {
+            if (familyIds.contains(junction.getId()))
+                indexedMembers--;
+        }
+        index += indexedMembers;
+        for (long id : touchedIds) {
+            if (!familyIds.contains(id))
+                continue;
+            Object value = db.getNodeById(id).getProperty(indexProperty, null);
+            if (value instanceof Number)
+                index = Math.max(index, ((Number) value).intValue() + 1);
+        }
+        return index;
+    }
+
+    /// relationships of other types are the same on all members of the family
+    private List<RelationshipSnapshot> ignoredRelationships(Node member, Direction direction, Set<Long> newRelationshipIds) {
+        List<RelationshipSnapshot> ignored = new ArrayList<>();
+        Set<String> splitTypes = splitTypes();
+        for (Relationship relationship : member.getRelationships(direction)) {
+            if (splitTypes.contains(relationship.getType().name()) || newRelationshipIds.contains(relationship.getId()))
+                continue;
+            ignored.add(RelationshipSnapshot.of(relationship, direction));
+        }
+        return ignored;
+    }
+
+    /// returns ids of members which were read, of nodes which get new links and of nodes on the other side of new and ignored relationships
+    private Set<Long> lockIds(List<Relationship> relationships, Set<Long> newRelationshipIds) {
+        Set<Long> ids = new TreeSet<>(readIds);
+        ids.add(template.getId());
+        for (Relationship relationship : relationships) {
+            if (isIncoming(relationship)) {
+                ids.add(relationship.getStartNodeId());
+                ids.add(relationship.getEndNodeId());
+                linkTargets(relationship.getType().name()).forEach(node -> ids.add(node.getId()));
+            } else if (isOutgoing(relationship)) {
+                ids.add(relationship.getEndNodeId());
+                ids.add(relationship.getStartNodeId());
+                List<Node> sources = new ArrayList<>();
+                linkSources(relationship.getType().name(), sources, new ArrayList<>());
+                sources.forEach(node -> ids.add(node.getId()));
+            }
+        }
+        ignoredRelationships(template, Direction.INCOMING, newRelationshipIds).forEach(relationship -> ids.add(relationship.getOtherNode().getId()));
+        ignoredRelationships(template, Direction.OUTGOING, newRelationshipIds).forEach(relationship -> ids.add(relationship.getOtherNode().getId()));
+        return ids;
+    }
+
+    private static long[] toSortedArray(Set<Long> ids) {
+        long[] sortedIds = new long[ids.size()];
+        int i = 0;
+        for (long id : ids) {
+            sortedIds[i++] = id;
+        }
+        Arrays.sort(sortedIds);
+        return sortedIds;
+    }
+
+    private Set<String> splitTypes() {
+        Set<String> types = new HashSet<>(config.getRelationshipTypes());
+        types.addAll(config.getGreedyRelationshipTypes());
+        return types;
+    }
+
+    private Node createSplitNode(Label[] labels, Map<String, Object> properties, int index) {
+        Node node = db.createNode(labels);
+        if (config.getIndexPropertyName() != null) {
+            node.setProperty(config.getIndexPropertyName(), index);
+            minIndex = minIndex == null ? index : Math.min(minIndex, index);
+            maxIndex = maxIndex == null ? index : Math.max(maxIndex, index);
+        }
+        properties.forEach(node::setProperty);
+        copiedProperties += properties.size() + (config.getIndexPropertyName() != null ? 1 : 0);
+        return node;
+    }
+
+    private void createRelationship(Node from, Node to, RelationshipSnapshot source) {
+        Relationship relationship = from.createRelationshipTo(to, source.getType());
+        createdRelationships++;
+        source.getProperties().applyTo(relationship);
+        copiedProperties += source.getProperties().size();
+    }
+
+    private void repair(Node node, List<RelationshipSnapshot> ignoredIncoming, List<RelationshipSnapshot> ignoredOutgoing) {
+        for (RelationshipSnapshot relationship : ignoredIncoming) {
+            createRelationship(relationship.getOtherNode(), node, relationship);
+        }
+        for (RelationshipSnapshot relationship : ignoredOutgoing) {
+            createRelationship(node, relationship.getOtherNode(), relationship);
+        }
+    }
+
+    long getCreatedEntryNodes() {
+        return createdEntryNodes;
+    }
+
+    long getCreatedExitNodes() {
+        return createdExitNodes;
+    }
+
+    long getCreatedRelationships() {
+        return createdRelationships;
+    }
+
+    long getSkippedRelationships() {
+        return skippedRelationships;
+    }
+
+    long getScannedRelationships() {
+        return scannedRelationships;
+    }
+
+    long getCopiedProperties() {
+        return copiedProperties;
+    }
+
+    long getLockCount() {
+        return locks.getCount();
+    }
+
+    long getLockWaitNanos() {
+        return locks.getWaitNanos();
+    }
+
+    /// returns the lowest index of created nodes or null if nothing was indexed
+    Integer getMinIndex() {
+        return minIndex;
+    }
+
+    Integer getMaxIndex() {
+        return maxIndex;
+    }
+}
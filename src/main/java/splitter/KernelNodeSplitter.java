@@ -0,0 +1,569 @@
+package splitter;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.internal.kernel.api.*;
+import org.neo4j.internal.kernel.api.exceptions.KernelException;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.values.storable.Value;
+import org.neo4j.values.storable.Values;
+import splitter.config.SplitNodeConfiguration;
+
+import java.util.*;
+
+/**
+ * Split engine which reads and writes through the kernel cursor and write API.
+ * Relationship types and index property are resolved to token ids once, labels and property keys are copied as ids,
+ * no Node or Relationship proxies are created except for the returned nodes.
+ */
+class KernelNodeSplitter extends AbstractSplitEngine {
+    //count of times neighbours are locked again if relationships of the source node change before it is locked
+    private static final int MAX_RELOCKS = 3;
+    private final ThreadToStatementContextBridge bridge;
+    //configured types in order of processing: "non-greedy" types first, then "greedy" ones
+    private final List<String> typeNames = new ArrayList<>();
+    private final int greedyTypesStart;
+    private int[] typeIds;
+    private int indexPropertyKey = TokenRead.NO_TOKEN;
+    private int junctionLabel = TokenRead.NO_TOKEN;
+    private int junctionTypePropertyKey = TokenRead.NO_TOKEN;
+    private int prototypeLabel = TokenRead.NO_TOKEN;
+    private int prototypeType = TokenRead.NO_TOKEN;
+    private int[] keepPropertyKeys = new int[0];
+    private long lockCount;
+    private long lockWaitNanos;
+
+    KernelNodeSplitter(GraphDatabaseService db, SplitNodeConfiguration config) {
+        super(db, config);
+        this.bridge = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        typeNames.addAll(config.getRelationshipTypes());
+        greedyTypesStart = typeNames.size();
+        typeNames.addAll(config.getGreedyRelationshipTypes());
+    }
+
+    @Override
+    protected List<Node> splitNode(Node node) {
+        KernelTransaction ktx = bridge.getKernelTransactionBoundToThisThread(true);
+        try {
+            resolveTokens(ktx);
+            return splitNode(ktx, node);
+        } catch (KernelException e) {
+            throw new RuntimeException("Unable to split node " + node.getId(), e);
+        }
+    }
+
+    /// resolves tokens with the first transaction, relationship types which do not exist yet get NO_TOKEN id
+    /// and are looked up again for each node, because they may be created by later transactions
+    private void resolveTokens(KernelTransaction ktx) throws KernelException {
+        if (typeIds != null) {
+            resolveTypes(ktx.tokenRead());
+            return;
+        }
+        typeIds = new int[typeNames.size()];
+        Arrays.fill(typeIds, TokenRead.NO_TOKEN);
+        resolveTypes(ktx.tokenRead());
+        if (config.getIndexPropertyName() != null)
+            indexPropertyKey = ktx.tokenWrite().propertyKeyGetOrCreateForName(config.getIndexPropertyName());
+        if (config.isJunctionTopology()) {
+            junctionLabel = ktx.tokenWrite().labelGetOrCreateForName(JUNCTION_LABEL.name());
+            junctionTypePropertyKey = ktx.tokenWrite().propertyKeyGetOrCreateForName(JUNCTION_TYPE_PROPERTY);
+        }
+        if (config.isPrototypeProperties()) {
+            prototypeLabel = ktx.tokenWrite().labelGetOrCreateForName(PROTOTYPE_LABEL.name());
+            prototypeType = ktx.tokenWrite().relationshipTypeGetOrCreateForName(PROTOTYPE_TYPE.name());
+            keepPropertyKeys = new int[config.getKeepProperties().size()];
+            int i = 0;
+            for (String keepProperty : config.getKeepProperties()) {
+                keepPropertyKeys[i++] = ktx.tokenWrite().propertyKeyGetOrCreateForName(keepProperty);
+            }
+        }
+    }
+
+    private void resolveTypes(TokenRead tokenRead) {
+        for (int i = 0; i < typeIds.length; i++) {
+            if (typeIds[i] == TokenRead.NO_TOKEN)
+                typeIds[i] = tokenRead.relationshipType(typeNames.get(i));
+        }
+    }
+
+    private List<Node> splitNode(KernelTransaction ktx, Node node) throws KernelException {
+        long nodeId = node.getId();
+        Read read = ktx.dataRead();
+        Write write = ktx.dataWrite();
+        CursorFactory cursors = ktx.cursors();
+
+        Buckets buckets;
+        int[] labels;
+        KernelPropertySnapshot properties;
+        try (NodeCursor nodeCursor = cursors.allocateNodeCursor();
+             RelationshipTraversalCursor relationshipCursor = cursors.allocateRelationshipTraversalCursor();
+             PropertyCursor propertyCursor = cursors.allocatePropertyCursor()) {
+            long start = System.nanoTime();
+            buckets = scan(read, nodeId, nodeCursor, relationshipCursor, propertyCursor);
+            endPhase(Phase.SCAN, start);
+            //lock source node and each neighbour once in ascending id order
+            long[] lockedIds = lock(ktx, nodeId, buckets.getNeighbourIds());
+            start = System.nanoTime();
+            int relocks = 0;
+            while (!buckets.isCurrent(read, nodeId, nodeCursor, relationshipCursor)) {
+                //relationships were changed before the source node was locked, scan them again under the lock
+                buckets = scan(read, nodeId, nodeCursor, relationshipCursor, propertyCursor);
+                endPhase(Phase.SCAN, start);
+                long[] ids = lockIds(nodeId, buckets.getNeighbourIds());
+                if (!containsAll(lockedIds, ids)) {
+                    //new neighbours can not be locked after the others without breaking the ascending order,
+                    //so all locks are released and the whole sorted set is locked again
+                    if (++relocks > MAX_RELOCKS)
+                        throw new RuntimeException("Relationships of node " + nodeId + " keep changing, unable to lock its neighbours");
+                    unlock(ktx, lockedIds);
+                    lockedIds = lock(ktx, nodeId, buckets.getNeighbourIds());
+                }
+                start = System.nanoTime();
+            }
+
+            //labels and properties of source node are read once and copied to each created node
+            read.singleNode(nodeId, nodeCursor);
+            if (!nodeCursor.next())
+                return Collections.emptyList();
+            LabelSet labelSet = nodeCursor.labels();
+            labels = new int[labelSet.numberOfLabels()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = labelSet.label(i);
+            }
+            nodeCursor.properties(propertyCursor);
+            properties = KernelPropertySnapshot.of(propertyCursor);
+            endPhase(Phase.SCAN, start);
+        }
+        //in prototype mode split nodes get only kept properties, all properties are written once to the prototype node
+        KernelPropertySnapshot splitProperties = config.isPrototypeProperties() ? properties.retain(keepPropertyKeys) : properties;
+
+        int index = config.getStartIndex();
+        //collections for created nodes
+        LongList entrySplitNodes = new LongList();
+        LongList exitSplitNodes = new LongList();
+        LongList junctionNodes = new LongList();
+
+        for (int type = 0; type < greedyTypesStart; type++) {
+            //for each "non-greedy" type of relationship create nodes and copy relationships separately
+            index += createSplitNodesForRelationshipType(write, buckets, type, labels, splitProperties, index, new LongList(), entrySplitNodes, exitSplitNodes, junctionNodes);
+        }
+
+        //nodes which were created for outgoing "non-greedy" relationships
+        //additional incoming "greedy" relationships will be created for this nodes,
+        //in junction topology "greedy" relationships go to junction nodes of "non-greedy" types instead
+        LongList exitSplitNodesForNonGreedyRelationships = config.isJunctionTopology() ? junctionNodes.copy() : exitSplitNodes.copy();
+
+        for (int type = greedyTypesStart; type < typeIds.length; type++) {
+            //for each "greedy" type of relationship create nodes and copy relationships separately
+            index += createSplitNodesForRelationshipType(write, buckets, type, labels, splitProperties, index, exitSplitNodesForNonGreedyRelationships, entrySplitNodes, exitSplitNodes, junctionNodes);
+        }
+
+        //if no nodes were created return empty collection and leave source node alone
+        if (entrySplitNodes.size() == 0 && exitSplitNodes.size() == 0)
+            return Collections.emptyList();
+
+        long start;
+        if (config.isPrototypeProperties()) {
+            start = System.nanoTime();
+            linkPrototype(write, properties, entrySplitNodes, exitSplitNodes);
+            endPhase(Phase.CREATE, start);
+        }
+
+        //copy relationships for which new nodes were not created for each created node
+        start = System.nanoTime();
+        repairRelationships(write, entrySplitNodes, buckets.ignoredIncoming, buckets.ignoredOutgoing);
+        repairRelationships(write, exitSplitNodes, buckets.ignoredIncoming, buckets.ignoredOutgoing);
+        start = endPhase(Phase.REPAIR, start);
+
+        //delete source node
+        write.nodeDetachDelete(nodeId);
+        endPhase(Phase.DELETE, start);
+        splitNodes++;
+        createdNodes += entrySplitNodes.size() + exitSplitNodes.size() + junctionNodes.size();
+        entryNodes += entrySplitNodes.size();
+        exitNodes += exitSplitNodes.size();
+
+        LongList createdList = entrySplitNodes.copy();
+        createdList.addAll(exitSplitNodes);
+        createdList.addAll(junctionNodes);
+        long[] created = Arrays.copyOf(createdList.values, createdList.size());
+        return new AbstractList<Node>() {
+            @Override
+            public Node get(int index) {
+                return db.getNodeById(created[index]);
+            }
+
+            @Override
+            public int size() {
+                return created.length;
+            }
+        };
+    }
+
+    /// returns count of created nodes
+    private int createSplitNodesForRelationshipType(Write write, Buckets buckets, int type, int[] labels, KernelPropertySnapshot properties, int startIndex,
+                                                    LongList nonGreedyExitNodes, LongList resultEntryNodes, LongList resultExitNodes, LongList resultJunctionNodes) throws KernelException {
+        List<KernelRelationship> incomingRelationships = buckets.incoming[type];
+        List<KernelRelationship> outgoingRelationships = buckets.outgoing[type];
+
+        //if incoming relationships not found or no and will not be nodes with outgoing relationships
+        //then exit
+        if (incomingRelationships.isEmpty() || (outgoingRelationships.isEmpty() && nonGreedyExitNodes.size() == 0))
+            return 0;
+
+        long start = System.nanoTime();
+        int index = startIndex;
+        //create separate node for each incoming relationship of target type
+        LongList enterNodes = new LongList();
+        for (KernelRelationship relationship : incomingRelationships) {
+            long splitNode = createSplitNode(write, labels, properties, index++);
+            createRelationship(write, relationship.otherNode, splitNode, relationship);
+            enterNodes.add(splitNode);
+        }
+        //create separate node for each outgoing relationship of target type
+        LongList exitNodes = new LongList();
+        for (KernelRelationship relationship : outgoingRelationships) {
+            long splitNode = createSplitNode(write, labels, properties, index++);
+            createRelationship(write, splitNode, relationship.otherNode, relationship);
+            exitNodes.add(splitNode);
+        }
+        start = endPhase(Phase.CREATE, start);
+
+        if (config.isJunctionTopology()) {
+            //link entry and exit nodes through a single junction node instead of linking each pair
+            resultJunctionNodes.add(linkThroughJunction(write, type, enterNodes, incomingRelationships, exitNodes, nonGreedyExitNodes));
+            endPhase(Phase.LINK, start);
+            resultEntryNodes.addAll(enterNodes);
+            resultExitNodes.addAll(exitNodes);
+            return enterNodes.size() + exitNodes.size();
+        }
+
+        //copy relationships
+        for (int i = 0; i < enterNodes.size(); i++) {
+            long enterNode = enterNodes.values[i];
+            KernelRelationship relationship = incomingRelationships.get(i);
+            for (int j = 0; j < exitNodes.size(); j++) {
+                //copy relationship and connect incoming and outgoing nodes
+                createRelationship(write, enterNode, exitNodes.values[j], relationship);
+            }
+            //if nonGreedyExitNodes is not empty then this relationship type is "greedy"
+            //so connect "greedy" entry node to "non-greedy" exit node
+            for (int j = 0; j < nonGreedyExitNodes.size(); j++) {
+                createRelationship(write, enterNode, nonGreedyExitNodes.values[j], relationship);
+            }
+        }
+        endPhase(Phase.LINK, start);
+        //copy created nodes to result collections
+        resultEntryNodes.addAll(enterNodes);
+        resultExitNodes.addAll(exitNodes);
+        return enterNodes.size() + exitNodes.size();
+    }
+
+    /// entry nodes are linked to the junction node with copies of their relationships,
+    /// the junction node is linked to exit nodes and, for "greedy" types, to junction nodes of "non-greedy" types
+    private long linkThroughJunction(Write write, int type, LongList enterNodes, List<KernelRelationship> incomingRelationships,
+                                     LongList exitNodes, LongList nonGreedyJunctionNodes) throws KernelException {
+        long junctionNode = write.nodeCreate();
+        createdNodeIds.add(junctionNode);
+        write.nodeAddLabel(junctionNode, junctionLabel);
+        write.nodeSetProperty(junctionNode, junctionTypePropertyKey, Values.stringValue(typeNames.get(type)));
+        copiedProperties++;
+        for (int i = 0; i < enterNodes.size(); i++) {
+            createRelationship(write, enterNodes.values[i], junctionNode, incomingRelationships.get(i));
+        }
+        for (int i = 0; i < exitNodes.size(); i++) {
+            write.relationshipCreate(junctionNode, typeIds[type], exitNodes.values[i]);
+            createdRelationships++;
+        }
+        for (int i = 0; i < nonGreedyJunctionNodes.size(); i++) {
+            write.relationshipCreate(junctionNode, typeIds[type], nonGreedyJunctionNodes.values[i]);
+            createdRelationships++;
+        }
+        return junctionNode;
+    }
+
+    /// creates the prototype node with all properties of the source node and links each entry and exit node to it
+    private void linkPrototype(Write write, KernelPropertySnapshot properties, LongList enterNodes, LongList exitNodes) throws KernelException {
+        long prototype = write.nodeCreate();
+        createdNodeIds.add(prototype);
+        createdNodes++;
+        prototypeNodes++;
+        write.nodeAddLabel(prototype, prototypeLabel);
+        copiedProperties += properties.size();
+        properties.applyToNode(write, prototype);
+        for (int i = 0; i < enterNodes.size(); i++) {
+            write.relationshipCreate(enterNodes.values[i], prototypeType, prototype);
+        }
+        for (int i = 0; i < exitNodes.size(); i++) {
+            write.relationshipCreate(exitNodes.values[i], prototypeType, prototype);
+        }
+        createdRelationships += enterNodes.size() + exitNodes.size();
+    }
+
+    private long createSplitNode(Write write, int[] labels, KernelPropertySnapshot properties, int index) throws KernelException {
+        long node = write.nodeCreate();
+        createdNodeIds.add(node);
+        for (int label : labels) {
+            write.nodeAddLabel(node, label);
+        }
+        if (indexPropertyKey != TokenRead.NO_TOKEN) { write.nodeSetProperty(node, indexPropertyKey, Values.intValue(index)); copiedProperties++; }
+        copiedProperties += properties.size();
+        properties.applyToNode(write, node);
+        return node;
+    }
+
+    private void createRelationship(Write write, long from, long to, KernelRelationship source) throws KernelException {
+        long relationship = write.relationshipCreate(from, source.type, to);
+        createdRelationships++;
+        copiedProperties += source.properties.size();
+        source.properties.applyToRelationship(write, relationship);
+    }
+
+    private void repairRelationships(Write write, LongList nodes, List<KernelRelationship> incoming, List<KernelRelationship> outgoing) throws KernelException {
+        for (int i = 0; i < nodes.size(); i++) {
+            long node = nodes.values[i];
+            for (KernelRelationship relationship : incoming) {
+                createRelationship(write, relationship.otherNode, node, relationship);
+            }
+            for (KernelRelationship relationship : outgoing) {
+                createRelationship(write, node, relationship.otherNode, relationship);
+            }
+        }
+    }
+
+    /// reads each relationship of the node once, self-loops land in both directions
+    private Buckets scan(Read read, long nodeId, NodeCursor nodeCursor, RelationshipTraversalCursor relationshipCursor, PropertyCursor propertyCursor) {
+        Buckets buckets = new Buckets(typeIds.length);
+        read.singleNode(nodeId, nodeCursor);
+        if (!nodeCursor.next())
+            return buckets;
+        nodeCursor.allRelationships(relationshipCursor);
+        while (relationshipCursor.next()) {
+            scannedRelationships++;
+            long source = relationshipCursor.sourceNodeReference();
+            long target = relationshipCursor.targetNodeReference();
+            relationshipCursor.properties(propertyCursor);
+            KernelRelationship relationship = new KernelRelationship(relationshipCursor.type(), source == nodeId ? target : source,
+                    KernelPropertySnapshot.of(propertyCursor));
+            buckets.neighbourIds.add(relationship.otherNode);
+            buckets.relationshipIds.add(relationshipCursor.relationshipReference());
+            if (target == nodeId)
+                buckets.add(relationship, true, typePosition(relationship.type));
+            if (source == nodeId)
+                buckets.add(relationship, false, typePosition(relationship.type));
+        }
+        return buckets;
+    }
+
+    /// returns position of type among configured types or -1 if relationships of type are not split
+    private int typePosition(int type) {
+        for (int i = 0; i < typeIds.length; i++) {
+            if (typeIds[i] == type)
+                return i;
+        }
+        return -1;
+    }
+
+    /// locks the source node and its neighbours in ascending id order, returns the locked ids
+    private long[] lock(KernelTransaction ktx, long nodeId, long[] neighbourIds) {
+        long start = System.nanoTime();
+        long[] ids = lockIds(nodeId, neighbourIds);
+        ktx.locks().acquireExclusiveNodeLock(ids);
+        lockCount += ids.length;
+        lockWaitNanos += System.nanoTime() - start;
+        return ids;
+    }
+
+    /// releases locks taken by lock, locks which the transaction took before are still held, released locks are not counted
+    private void unlock(KernelTransaction ktx, long[] lockedIds) {
+        ktx.locks().releaseExclusiveNodeLock(lockedIds);
+        lockCount -= lockedIds.length;
+    }
+
+    /// returns sorted distinct ids of the source node and its neighbours
+    private static long[] lockIds(long nodeId, long[] neighbourIds) {
+        long[] ids = Arrays.copyOf(neighbourIds, neighbourIds.length + 1);
+        ids[neighbourIds.length] = nodeId;
+        Arrays.sort(ids);
+        int distinct = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[distinct - 1])
+                ids[distinct++] = ids[i];
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    /// returns true if every id is in the sorted array
+    private static boolean containsAll(long[] sortedIds, long[] ids) {
+        for (long id : ids) {
+            if (Arrays.binarySearch(sortedIds, id) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public long getLockCount() {
+        return lockCount;
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    private static final class KernelRelationship {
+        final int type;
+        final long otherNode;
+        final KernelPropertySnapshot properties;
+
+        KernelRelationship(int type, long otherNode, KernelPropertySnapshot properties) {
+            this.type = type;
+            this.otherNode = otherNode;
+            this.properties = properties;
+        }
+    }
+
+    private static final class Buckets {
+        final List<KernelRelationship>[] incoming;
+        final List<KernelRelationship>[] outgoing;
+        final List<KernelRelationship> ignoredIncoming = new ArrayList<>();
+        final List<KernelRelationship> ignoredOutgoing = new ArrayList<>();
+        final LongList neighbourIds = new LongList();
+        final LongList relationshipIds = new LongList();
+
+        @SuppressWarnings("unchecked")
+        Buckets(int types) {
+            incoming = new List[types];
+            outgoing = new List[types];
+            for (int i = 0; i < types; i++) {
+                incoming[i] = new ArrayList<>();
+                outgoing[i] = new ArrayList<>();
+            }
+        }
+
+        void add(KernelRelationship relationship, boolean isIncoming, int typePosition) {
+            if (isIncoming) {
+                (typePosition < 0 ? ignoredIncoming : incoming[typePosition]).add(relationship);
+            } else {
+                (typePosition < 0 ? ignoredOutgoing : outgoing[typePosition]).add(relationship);
+            }
+        }
+
+        long[] getNeighbourIds() {
+            return Arrays.copyOf(neighbourIds.values, neighbourIds.size());
+        }
+
+        /// returns true if the node still has the same relationships as were scanned, only relationship ids are read
+        boolean isCurrent(Read read, long nodeId, NodeCursor nodeCursor, RelationshipTraversalCursor relationshipCursor) {
+            read.singleNode(nodeId, nodeCursor);
+            if (!nodeCursor.next())
+                return relationshipIds.size() == 0;
+            long[] current = new long[relationshipIds.size()];
+            int count = 0;
+            nodeCursor.allRelationships(relationshipCursor);
+            while (relationshipCursor.next()) {
+                if (count == current.length)
+                    return false;
+                current[count++] = relationshipCursor.relationshipReference();
+            }
+            long[] scanned = Arrays.copyOf(relationshipIds.values, relationshipIds.size());
+            Arrays.sort(scanned);
+            Arrays.sort(current, 0, count);
+            return count == scanned.length && Arrays.equals(scanned, current);
+        }
+    }
+
+    /// growable list of primitive ids
+    private static final class LongList {
+        long[] values = new long[8];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        void addAll(LongList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        LongList copy() {
+            LongList copy = new LongList();
+            copy.addAll(this);
+            return copy;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /// properties read once from a property cursor and written to each copy by key id
+    private static final class KernelPropertySnapshot {
+        private static final KernelPropertySnapshot EMPTY = new KernelPropertySnapshot(new int[0], new Value[0]);
+
+        private final int[] keys;
+        private final Value[] values;
+
+        private KernelPropertySnapshot(int[] keys, Value[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        static KernelPropertySnapshot of(PropertyCursor cursor) {
+            int[] keys = new int[4];
+            Value[] values = new Value[4];
+            int size = 0;
+            while (cursor.next()) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                keys[size] = cursor.propertyKey();
+                values[size] = cursor.propertyValue();
+                size++;
+            }
+            return size == 0 ? EMPTY : new KernelPropertySnapshot(Arrays.copyOf(keys, size), Arrays.copyOf(values, size));
+        }
+
+        /// returns snapshot of properties with the given key ids
+        KernelPropertySnapshot retain(int[] retainedKeys) {
+            int[] filteredKeys = new int[keys.length];
+            Value[] filteredValues = new Value[keys.length];
+            int size = 0;
+            for (int i = 0; i < keys.length; i++) {
+                for (int retainedKey : retainedKeys) {
+                    if (keys[i] == retainedKey) {
+                        filteredKeys[size] = keys[i];
+                        filteredValues[size] = values[i];
+                        size++;
+                        break;
+                    }
+                }
+            }
+            return size == 0 ? EMPTY : new KernelPropertySnapshot(Arrays.copyOf(filteredKeys, size), Arrays.copyOf(filteredValues, size));
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        void applyToNode(Write write, long node) throws KernelException {
+            for (int i = 0; i < keys.length; i++) {
+                write.nodeSetProperty(node, keys[i], values[i]);
+            }
+        }
+
+        void applyToRelationship(Write write, long relationship) throws KernelException {
+            for (int i = 0; i < keys.length; i++) {
+                write.relationshipSetProperty(relationship, keys[i], values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package splitter;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Lock;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Takes write locks on a split node and its neighbours.
+ * Every node is locked once and all nodes are locked in ascending id order,
+ * so concurrent splits of nodes with common neighbours wait for each other instead of deadlocking.
+ * Keeps count of taken locks and time spent waiting for them.
+ * Locks of the last acquire can be released again, so a caller which finds new neighbours under the locks
+ * can take the whole sorted set again instead of locking the new neighbours out of order.
+ */
+class NeighbourLocks {
+    private final GraphDatabaseService db;
+    private final List<Lock> acquired = new ArrayList<>();
+    private long count;
+    private long waitNanos;
+
+    NeighbourLocks(GraphDatabaseService db) {
+        this.db = db;
+    }
+
+    /// locks source node and its sorted neighbours, returns count of taken locks
+    int acquire(Transaction tx, Node node, long[] neighbourIds) {
+        long start = System.nanoTime();
+        long nodeId = node.getId();
+        boolean nodeLocked = false;
+        int locked = 0;
+        acquired.clear();
+        for (int i = 0; i < neighbourIds.length; i++) {
+            long neighbourId = neighbourIds[i];
+            if (!nodeLocked && nodeId <= neighbourId) {
+                acquired.add(tx.acquireWriteLock(node));
+                nodeLocked = true;
+                locked++;
+            }
+            //self-loops make source node a neighbour of itself, parallel relationships repeat a neighbour
+            if (neighbourId == nodeId || (i > 0 && neighbourId == neighbourIds[i - 1]))
+                continue;
+            acquired.add(tx.acquireWriteLock(db.getNodeById(neighbourId)));
+            locked++;
+        }
+        if (!nodeLocked) {
+            acquired.add(tx.acquireWriteLock(node));
+            locked++;
+        }
+        count += locked;
+        waitNanos += System.nanoTime() - start;
+        return locked;
+    }
+
+    /// releases locks taken by the last acquire, locks which the transaction took before are still held,
+    /// released locks are not counted
+    void release() {
+        for (Lock lock : acquired) {
+            lock.release();
+        }
+        count -= acquired.size();
+        acquired.clear();
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getWaitNanos() {
+        return waitNanos;
+    }
+}
@@ -0,0 +1,90 @@
+package splitter;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import splitter.config.SplitNodeConfiguration;
+
+import java.util.*;
+
+/**
+ * Groups source nodes into partitions which can be split concurrently.
+ * Source nodes which are neighbours of each other or have a common neighbour are locked together while splitting,
+ * so they always get into the same partition. Nodes which will not be split lock nothing and can go anywhere.
+ */
+class NeighbourPartitioner {
+    private final Map<Long, Long> parents = new HashMap<>();
+
+    private NeighbourPartitioner() {
+    }
+
+    /// returns at most partitionCount non-empty partitions of source node ids
+    static List<List<Long>> partition(Iterable<Node> nodes, SplitNodeConfiguration config, int partitionCount) {
+        NeighbourPartitioner partitioner = new NeighbourPartitioner();
+        Set<Long> sourceIds = new LinkedHashSet<>();
+        List<Long> independentIds = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node == null || !sourceIds.add(node.getId()))
+                continue;
+            if (!RelationshipBuckets.hasSplitRelationships(node, config)) {
+                independentIds.add(node.getId());
+                continue;
+            }
+            long nodeId = node.getId();
+            partitioner.find(nodeId);
+            for (Relationship relationship : node.getRelationships()) {
+                partitioner.union(nodeId, relationship.getStartNodeId() == nodeId ? relationship.getEndNodeId() : relationship.getStartNodeId());
+            }
+        }
+
+        //collect groups of nodes which share locks
+        Map<Long, List<Long>> groups = new LinkedHashMap<>();
+        for (long id : sourceIds) {
+            if (partitioner.parents.containsKey(id))
+                groups.computeIfAbsent(partitioner.find(id), root -> new ArrayList<>()).add(id);
+        }
+        List<List<Long>> sortedGroups = new ArrayList<>(groups.values());
+        sortedGroups.sort((first, second) -> Integer.compare(second.size(), first.size()));
+
+        //assign largest groups first, each to the least loaded partition
+        List<List<Long>> partitions = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            partitions.add(new ArrayList<>());
+        }
+        PriorityQueue<List<Long>> leastLoaded = new PriorityQueue<>(partitionCount, Comparator.comparingInt(List::size));
+        leastLoaded.addAll(partitions);
+        for (List<Long> group : sortedGroups) {
+            List<Long> partition = leastLoaded.poll();
+            partition.addAll(group);
+            leastLoaded.add(partition);
+        }
+        for (long id : independentIds) {
+            List<Long> partition = leastLoaded.poll();
+            partition.add(id);
+            leastLoaded.add(partition);
+        }
+        partitions.removeIf(List::isEmpty);
+        return partitions;
+    }
+
+    private long find(long id) {
+        Long parent = parents.putIfAbsent(id, id);
+        if (parent == null)
+            return id;
+        long current = id;
+        while (parent != current) {
+            //path halving
+            long grandParent = parents.get(parent);
+            parents.put(current, grandParent);
+            current = grandParent;
+            parent = parents.get(current);
+        }
+        return current;
+    }
+
+    private void union(long first, long second) {
+        long firstRoot = find(first);
+        long secondRoot = find(second);
+        if (firstRoot != secondRoot)
+            parents.put(secondRoot, firstRoot);
+    }
+}
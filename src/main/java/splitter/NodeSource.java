@@ -0,0 +1,39 @@
+package splitter;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.kernel.impl.store.id.IdGeneratorFactory;
+import org.neo4j.kernel.impl.store.id.IdType;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import splitter.config.SplitNodeConfiguration;
+
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+
+/**
+ * Lazily finds source nodes by label and optional property value,
+ * label scan store or property index is used by the database, so candidates are never collected in memory.
+ */
+class NodeSource {
+    private NodeSource() {
+    }
+
+    /// returns the highest node id which may be in use, nodes created later get higher ids unless they reuse ids of deleted nodes
+    static long highestNodeId(GraphDatabaseService db) {
+        return ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(IdGeneratorFactory.class)
+                .get(IdType.NODE).getHighestPossibleIdInUse();
+    }
+
+    /// returns lazy stream of source node ids in ascending id order, it should be closed to release the underlying cursor.
+    /// Split nodes get labels and properties of their source, so nodes created by the call (isCreatedNode) are skipped
+    static Stream<Long> findByLabel(GraphDatabaseService db, String label, SplitNodeConfiguration config, LongPredicate isCreatedNode) {
+        ResourceIterator<Node> nodes = config.getFilterPropertyName() == null
+                ? db.findNodes(Label.label(label))
+                : db.findNodes(Label.label(label), config.getFilterPropertyName(), config.getFilterValue());
+        return nodes.stream()
+                .map(Node::getId)
+                .filter(id -> !isCreatedNode.test(id));
+    }
+}
@@ -0,0 +1,297 @@
+package splitter;
+
+import org.neo4j.graphdb.*;
+import org.neo4j.helpers.collection.Iterables;
+import splitter.config.SplitNodeConfiguration;
+
+import java.util.*;
+
+/**
+ * Split engine which reads and writes through the core API.
+ */
+class NodeSplitter extends AbstractSplitEngine {
+    //count of times neighbours are locked again if relationships of the source node change before it is locked
+    private static final int MAX_RELOCKS = 3;
+    private final NeighbourLocks locks;
+
+    NodeSplitter(GraphDatabaseService db, SplitNodeConfiguration config) {
+        super(db, config);
+        this.locks = new NeighbourLocks(db);
+    }
+
+    @Override
+    protected List<Node> splitNode(Node node) {
+        Transaction tx = db.beginTx();
+
+        //sort relationships by type and direction in a single pass,
+        //relationships of other types will not be used for creating new nodes
+        long start = System.nanoTime();
+        RelationshipBuckets buckets = RelationshipBuckets.scan(node, config);
+        scannedRelationships += buckets.getScannedRelationships();
+        endPhase(Phase.SCAN, start);
+
+        //lock source node and each neighbour once in ascending id order
+        long[] lockedIds = buckets.getNeighbourIds();
+        locks.acquire(tx, node, lockedIds);
+        start = System.nanoTime();
+        int relocks = 0;
+        //an unchanged node costs only a degree comparison here, relationships are read again only when degrees differ
+        while (!buckets.isCurrent(node)) {
+            //relationships were added or deleted before the source node was locked, scan them again under the lock
+            buckets = RelationshipBuckets.scan(node, config);
+            scannedRelationships += buckets.getScannedRelationships();
+            endPhase(Phase.SCAN, start);
+            long[] neighbourIds = buckets.getNeighbourIds();
+            if (!containsAll(lockedIds, neighbourIds)) {
+                //new neighbours can not be locked after the others without breaking the ascending order,
+                //so all locks are released and the whole sorted set is locked again
+                if (++relocks > MAX_RELOCKS)
+                    throw new RuntimeException("Relationships of node " + node.getId() + " keep changing, unable to lock its neighbours");
+                locks.release();
+                lockedIds = neighbourIds;
+                locks.acquire(tx, node, lockedIds);
+            }
+            start = System.nanoTime();
+        }
+
+        //labels and properties of source node are read once and copied to each created node
+        Label[] labels = Iterables.asArray(Label.class, node.getLabels());
+        PropertySnapshot properties = PropertySnapshot.of(node);
+        //in prototype mode split nodes get only kept properties, all properties are written once to the prototype node
+        PropertySnapshot splitProperties = config.isPrototypeProperties() ? properties.retain(config.getKeepProperties()) : properties;
+        endPhase(Phase.SCAN, start);
+
+        int index = config.getStartIndex();
+        String indexProperty = config.getIndexPropertyName();
+        //collections for created nodes
+        List<Node> entrySplitNodes = new ArrayList<>();
+        List<Node> exitSplitNodes = new ArrayList<>();
+        List<Node> junctionNodes = new ArrayList<>();
+
+        for(String relationType: config.getRelationshipTypes()) {
+            //for each "non-greedy" type of relationship create nodes and copy relationships separately
+            index += createSplitNodesForRelationsipType(buckets, labels, splitProperties, relationType, indexProperty, index, new ArrayList<>(), entrySplitNodes, exitSplitNodes, junctionNodes);
+        }
+
+        //collection for nodes which were created for outgoing "non-greedy" relationships
+        //additional incoming "greedy" relationships will be created for this nodes,
+        //in junction topology "greedy" relationships go to junction nodes of "non-greedy" types instead
+        List<Node> exitSplitNodesForNonGreedyRelationships = new ArrayList<>(config.isJunctionTopology() ? junctionNodes : exitSplitNodes);
+
+        for(String relationType: config.getGreedyRelationshipTypes()) {
+            //for each "greedy" type of relationship create nodes and copy relationships separately
+            index += createSplitNodesForRelationsipType(buckets, labels, splitProperties, relationType, indexProperty, index, exitSplitNodesForNonGreedyRelationships, entrySplitNodes, exitSplitNodes, junctionNodes);
+        }
+
+        //if no nodes were created return empty collection and leave source node alone
+        if (entrySplitNodes.isEmpty() && exitSplitNodes.isEmpty())
+            return Collections.emptyList();
+
+        if (config.isPrototypeProperties()) {
+            start = System.nanoTime();
+            linkPrototype(properties, entrySplitNodes, exitSplitNodes);
+            endPhase(Phase.CREATE, start);
+        }
+
+        //copy relationships for which new nodes were not created for each created node
+        start = System.nanoTime();
+        repairRelationships(entrySplitNodes, exitSplitNodes,
+                RelationshipSnapshot.of(buckets.getIgnoredIncoming(), Direction.INCOMING),
+                RelationshipSnapshot.of(buckets.getIgnoredOutgoing(), Direction.OUTGOING));
+        start = endPhase(Phase.REPAIR, start);
+
+        //delete source node
+        detachDeleteNode(node, buckets);
+        endPhase(Phase.DELETE, start);
+        splitNodes++;
+        createdNodes += entrySplitNodes.size() + exitSplitNodes.size() + junctionNodes.size();
+        entryNodes += entrySplitNodes.size();
+        exitNodes += exitSplitNodes.size();
+
+        List<Node> created = new ArrayList<>(entrySplitNodes.size() + exitSplitNodes.size() + junctionNodes.size());
+        created.addAll(entrySplitNodes);
+        created.addAll(exitSplitNodes);
+        created.addAll(junctionNodes);
+        return created;
+    }
+
+    /// returns count of created nodes
+    private int createSplitNodesForRelationsipType(RelationshipBuckets buckets, Label[] labels, PropertySnapshot properties, String relationType, String indexProperty, int startIndex, List<Node> nonGreedyExitNodes, List<Node> resultEntryNodes, List<Node> resultExitNodes, List<Node> resultJunctionNodes) {
+        //source node relationships of target type
+        List<Relationship> incomingRelationships = buckets.getIncoming(relationType);
+        List<Relationship> outgoingRelationships = buckets.getOutgoing(relationType);
+
+        //if incoming relationships not found or no and will not be nodes with outgoing relationships
+        //then exit
+        if (incomingRelationships.isEmpty() || (outgoingRelationships.isEmpty() && nonGreedyExitNodes.isEmpty()))
+            return 0;
+
+        //each relationship is read once, its snapshot is used for all copies
+        long start = System.nanoTime();
+        List<RelationshipSnapshot> incomingSnapshots = RelationshipSnapshot.of(incomingRelationships, Direction.INCOMING);
+        List<RelationshipSnapshot> outgoingSnapshots = RelationshipSnapshot.of(outgoingRelationships, Direction.OUTGOING);
+
+        int index = startIndex;
+        //create separate node for each incoming relationship of target type
+        List<Node> enterNodes = createSplitNodesForRelationsips(labels, properties, incomingSnapshots, indexProperty, index, Direction.INCOMING);
+        index += enterNodes.size();
+        //create separate node for each outgoing relationship of target type
+        List<Node> exitNodes = createSplitNodesForRelationsips(labels, properties, outgoingSnapshots, indexProperty, index, Direction.OUTGOING);
+        start = endPhase(Phase.CREATE, start);
+
+        if (config.isJunctionTopology()) {
+            //link entry and exit nodes through a single junction node instead of linking each pair
+            resultJunctionNodes.add(linkThroughJunction(relationType, enterNodes, incomingSnapshots, exitNodes, nonGreedyExitNodes));
+            endPhase(Phase.LINK, start);
+            resultEntryNodes.addAll(enterNodes);
+            resultExitNodes.addAll(exitNodes);
+            return enterNodes.size() + exitNodes.size();
+        }
+
+        //copy relationships
+        for (int i = 0; i < enterNodes.size(); i++) {
+            Node enterNode = enterNodes.get(i);
+            RelationshipSnapshot relationship = incomingSnapshots.get(i);
+            for (Node exitNode : exitNodes) {
+                //copy relationship and connect incoming and outgoing nodes
+                createRelationship(enterNode, exitNode, relationship);
+            }
+            //if nonGreedyExitNodes is not empty then this relationship type is "greedy"
+            //so connect "greedy" entry node to "non-greedy" exit node
+            for (Node exitNode : nonGreedyExitNodes) {
+                //copy relationship and connect incoming and outgoing "non-greedy" nodes
+                createRelationship(enterNode, exitNode, relationship);
+            }
+        }
+        endPhase(Phase.LINK, start);
+        //copy created nodes to result collections
+        resultEntryNodes.addAll(enterNodes);
+        resultExitNodes.addAll(exitNodes);
+        return enterNodes.size() + exitNodes.size();
+    }
+
+    /// entry nodes are linked to the junction node with copies of their relationships,
+    /// the junction node is linked to exit nodes and, for "greedy" types, to junction nodes of "non-greedy" types
+    private Node linkThroughJunction(String relationType, List<Node> enterNodes, List<RelationshipSnapshot> incomingSnapshots, List<Node> exitNodes, List<Node> nonGreedyJunctionNodes) {
+        Node junctionNode = db.createNode(JUNCTION_LABEL);
+        createdNodeIds.add(junctionNode.getId());
+        junctionNode.setProperty(JUNCTION_TYPE_PROPERTY, relationType);
+        copiedProperties++;
+        for (int i = 0; i < enterNodes.size(); i++) {
+            createRelationship(enterNodes.get(i), junctionNode, incomingSnapshots.get(i));
+        }
+        RelationshipType type = RelationshipType.withName(relationType);
+        for (Node exitNode : exitNodes) {
+            junctionNode.createRelationshipTo(exitNode, type);
+            createdRelationships++;
+        }
+        for (Node nonGreedyJunctionNode : nonGreedyJunctionNodes) {
+            junctionNode.createRelationshipTo(nonGreedyJunctionNode, type);
+            createdRelationships++;
+        }
+        return junctionNode;
+    }
+
+    /// creates the prototype node with all properties of the source node and links each entry and exit node to it
+    private void linkPrototype(PropertySnapshot properties, List<Node> enterNodes, List<Node> exitNodes) {
+        Node prototype = db.createNode(PROTOTYPE_LABEL);
+        createdNodeIds.add(prototype.getId());
+        createdNodes++;
+        prototypeNodes++;
+        copiedProperties += properties.size();
+        properties.applyTo(prototype);
+        for (Node enterNode : enterNodes) {
+            enterNode.createRelationshipTo(prototype, PROTOTYPE_TYPE);
+        }
+        for (Node exitNode : exitNodes) {
+            exitNode.createRelationshipTo(prototype, PROTOTYPE_TYPE);
+        }
+        createdRelationships += enterNodes.size() + exitNodes.size();
+    }
+
+    /// returns true if every id is in the sorted array
+    private static boolean containsAll(long[] sortedIds, long[] ids) {
+        for (long id : ids) {
+            if (Arrays.binarySearch(sortedIds, id) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    private void createRelationship(Node from, Node to, RelationshipSnapshot source) {
+        Relationship relationship = from.createRelationshipTo(to, source.getType());
+        createdRelationships++;
+        copiedProperties += source.getProperties().size();
+        source.getProperties().applyTo(relationship);
+    }
+
+    /// deleting relationships reads all of them anyway, so a relationship which was added before the lock
+    /// while another one was deleted (degrees stayed the same) is found here and the split is rolled back
+    private void detachDeleteNode(Node node, RelationshipBuckets buckets) {
+        for (Relationship relationship : node.getRelationships()) {
+            if (!buckets.wasScanned(relationship.getId()))
+                throw new RuntimeException("Relationships of node " + node.getId() + " were changed before it was locked, split it again");
+            relationship.delete();
+        }
+        node.delete();
+    }
+
+    private Relationship createRelationship(Node targetNode, Node otherNode, Direction direction, RelationshipType type) {
+        createdRelationships++;
+        if (direction == Direction.INCOMING) {
+            return otherNode.createRelationshipTo(targetNode, type);
+        } else {
+            return targetNode.createRelationshipTo(otherNode, type);
+        }
+    }
+
+    private List<Node> createSplitNodesForRelationsips(Label[] labels, PropertySnapshot properties, List<RelationshipSnapshot> relationships, String indexProperty, int startIndex, Direction direction) {
+        ArrayList<Node> splitNodes = new ArrayList<>(relationships.size());
+        for (RelationshipSnapshot relationship : relationships) {
+            Node splitNode = createSplitNode(labels, properties, indexProperty, startIndex);
+            if (direction == Direction.INCOMING) {
+                createRelationship(relationship.getOtherNode(), splitNode, relationship);
+            } else {
+                createRelationship(splitNode, relationship.getOtherNode(), relationship);
+            }
+            startIndex++;
+            splitNodes.add(splitNode);
+        }
+        return splitNodes;
+    }
+
+    private Node createSplitNode(Label[] labels, PropertySnapshot properties, String indexPropertyName, int index) {
+        Node node = db.createNode(labels);
+        createdNodeIds.add(node.getId());
+        if (indexPropertyName != null) { node.setProperty(indexPropertyName, index); copiedProperties++; }
+        copiedProperties += properties.size();
+        properties.applyTo(node);
+        return node;
+    }
+
+    private void repairRelationships(List<Node> enterNodes, List<Node> exitNodes, List<RelationshipSnapshot> incoming, List<RelationshipSnapshot> outgoing) {
+        enterNodes.forEach(enterNode -> repairRelationships(enterNode, incoming, Direction.INCOMING));
+        enterNodes.forEach(enterNode -> repairRelationships(enterNode, outgoing, Direction.OUTGOING));
+        exitNodes.forEach(exitNode -> repairRelationships(exitNode, incoming, Direction.INCOMING));
+        exitNodes.forEach(exitNode -> repairRelationships(exitNode, outgoing, Direction.OUTGOING));
+    }
+
+    private void repairRelationships(Node node, List<RelationshipSnapshot> relationships, Direction direction) {
+        if (direction == Direction.BOTH) return;
+        relationships.forEach(relationship -> {
+            Relationship repairedRelationship = createRelationship(node, relationship.getOtherNode(), direction, relationship.getType());
+            copiedProperties += relationship.getProperties().size();
+            relationship.getProperties().applyTo(repairedRelationship);
+        });
+    }
+
+    @Override
+    public long getLockCount() {
+        return locks.getCount();
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return locks.getWaitNanos();
+    }
+}
@@ -0,0 +1,64 @@
+package splitter;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import splitter.config.SplitNodeConfiguration;
+import splitter.results.SplitBatchResult;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Splits nodes on a pool of worker threads, each worker splits its own partition of source nodes
+ * in batches committed in separate transactions.
+ * Partitions do not share neighbours, so workers never wait for locks held by each other.
+ */
+class ParallelSplitter {
+    private final GraphDatabaseService db;
+    private final SplitNodeConfiguration config;
+    private final SplitStatistics statistics;
+
+    ParallelSplitter(GraphDatabaseService db, SplitNodeConfiguration config, SplitStatistics statistics) {
+        this.db = db;
+        this.config = config;
+        this.statistics = statistics;
+    }
+
+    /// returns summary for each batch of each partition after all partitions are split
+    Stream<SplitBatchResult> split(Iterable<Node> nodes) {
+        List<List<Long>> partitions = NeighbourPartitioner.partition(nodes, config, config.getParallelism());
+        if (partitions.isEmpty())
+            return Stream.empty();
+
+        BatchedSplitter batchedSplitter = new BatchedSplitter(db, config, statistics);
+        ExecutorService executor = Executors.newFixedThreadPool(partitions.size());
+        try {
+            List<Future<List<SplitBatchResult>>> futures = new ArrayList<>(partitions.size());
+            for (int i = 0; i < partitions.size(); i++) {
+                long partition = i;
+                List<Long> ids = partitions.get(i);
+                futures.add(executor.submit(() -> splitPartition(batchedSplitter, partition, ids)));
+            }
+            List<SplitBatchResult> results = new ArrayList<>();
+            for (Future<List<SplitBatchResult>> future : futures) {
+                results.addAll(BatchedSplitter.await(future));
+            }
+            return results.stream();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<SplitBatchResult> splitPartition(BatchedSplitter batchedSplitter, long partition, List<Long> ids) {
+        List<SplitBatchResult> results = new ArrayList<>();
+        long batch = 0;
+        for (int from = 0; from < ids.size(); from += config.getBatchSize()) {
+            List<Long> batchIds = ids.subList(from, Math.min(from + config.getBatchSize(), ids.size()));
+            results.add(batchedSplitter.splitBatch(partition, batch++, batchIds));
+        }
+        return results;
+    }
+}
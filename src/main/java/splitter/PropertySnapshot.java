@@ -0,0 +1,62 @@
+package splitter;
+
+import org.neo4j.graphdb.PropertyContainer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Properties of a node or relationship read once and written to each of its copies.
+ */
+final class PropertySnapshot {
+    static final PropertySnapshot EMPTY = new PropertySnapshot(new String[0], new Object[0]);
+
+    private final String[] keys;
+    private final Object[] values;
+
+    private PropertySnapshot(String[] keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    static PropertySnapshot of(PropertyContainer container) {
+        Map<String, Object> properties = container.getAllProperties();
+        if (properties.isEmpty())
+            return EMPTY;
+        String[] keys = new String[properties.size()];
+        Object[] values = new Object[properties.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            keys[i] = property.getKey();
+            values[i] = property.getValue();
+            i++;
+        }
+        return new PropertySnapshot(keys, values);
+    }
+
+    /// returns snapshot of properties with the given keys
+    PropertySnapshot retain(Set<String> retainedKeys) {
+        String[] filteredKeys = new String[keys.length];
+        Object[] filteredValues = new Object[keys.length];
+        int size = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (retainedKeys.contains(keys[i])) {
+                filteredKeys[size] = keys[i];
+                filteredValues[size] = values[i];
+                size++;
+            }
+        }
+        return size == 0 ? EMPTY : new PropertySnapshot(Arrays.copyOf(filteredKeys, size), Arrays.copyOf(filteredValues, size));
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    void applyTo(PropertyContainer target) {
+        for (int i = 0; i < keys.length; i++) {
+            target.setProperty(keys[i], values[i]);
+        }
+    }
+}
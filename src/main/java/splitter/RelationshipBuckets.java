@@ -0,0 +1,130 @@
+package splitter;
+
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphdb.*;
+import splitter.config.SplitNodeConfiguration;
+
+import java.util.*;
+
+/**
+ * Relationships of a single node sorted into per-type, per-direction buckets
+ * in one pass over the relationship chain.
+ * Relationships of types which are not configured for splitting go to the "ignored" buckets,
+ * they are copied to every created node by the repair step.
+ */
+class RelationshipBuckets {
+    private final Map<String, List<Relationship>> incoming = new HashMap<>();
+    private final Map<String, List<Relationship>> outgoing = new HashMap<>();
+    private final List<Relationship> ignoredIncoming = new ArrayList<>();
+    private final List<Relationship> ignoredOutgoing = new ArrayList<>();
+    private long[] neighbourIds = new long[16];
+    private int neighbourCount;
+    //ids of scanned relationships
+    private final LongHashSet relationshipIds = new LongHashSet();
+    private int incomingCount;
+    private int outgoingCount;
+
+    private RelationshipBuckets() {
+    }
+
+    /// returns true if splitting the node by configured types will create at least one node,
+    /// only per-type degree counts are used, relationships are not read
+    static boolean hasSplitRelationships(Node node, SplitNodeConfiguration config) {
+        int nonGreedyExitCount = 0;
+        for (String relationType : config.getRelationshipTypes()) {
+            RelationshipType type = RelationshipType.withName(relationType);
+            int outgoing = node.getDegree(type, Direction.OUTGOING);
+            if (outgoing > 0 && node.getDegree(type, Direction.INCOMING) > 0)
+                nonGreedyExitCount += outgoing;
+        }
+        if (nonGreedyExitCount > 0)
+            return true;
+
+        for (String relationType : config.getGreedyRelationshipTypes()) {
+            RelationshipType type = RelationshipType.withName(relationType);
+            if (node.getDegree(type, Direction.INCOMING) > 0 && node.getDegree(type, Direction.OUTGOING) > 0)
+                return true;
+        }
+        return false;
+    }
+
+    /// reads each relationship of the node once per direction (so self-loops land in both directions)
+    /// and remembers ids of the nodes on the other side, nothing is locked here
+    static RelationshipBuckets scan(Node node, SplitNodeConfiguration config) {
+        RelationshipBuckets buckets = new RelationshipBuckets();
+        long nodeId = node.getId();
+        node.getRelationships(Direction.INCOMING).forEach(relationship ->
+                buckets.add(nodeId, relationship, Direction.INCOMING, config));
+        node.getRelationships(Direction.OUTGOING).forEach(relationship ->
+                buckets.add(nodeId, relationship, Direction.OUTGOING, config));
+        return buckets;
+    }
+
+    private void add(long nodeId, Relationship relationship, Direction direction, SplitNodeConfiguration config) {
+        addNeighbour(relationship.getStartNodeId() == nodeId ? relationship.getEndNodeId() : relationship.getStartNodeId());
+        relationshipIds.add(relationship.getId());
+        if (direction == Direction.INCOMING) incomingCount++;
+        else outgoingCount++;
+
+        String type = relationship.getType().name();
+        boolean split = config.getRelationshipTypes().contains(type) || config.getGreedyRelationshipTypes().contains(type);
+        if (direction == Direction.INCOMING) {
+            if (split) incoming.computeIfAbsent(type, t -> new ArrayList<>()).add(relationship);
+            else ignoredIncoming.add(relationship);
+        } else {
+            if (split) outgoing.computeIfAbsent(type, t -> new ArrayList<>()).add(relationship);
+            else ignoredOutgoing.add(relationship);
+        }
+    }
+
+    private void addNeighbour(long id) {
+        if (neighbourCount == neighbourIds.length)
+            neighbourIds = Arrays.copyOf(neighbourIds, neighbourCount * 2);
+        neighbourIds[neighbourCount++] = id;
+    }
+
+    /// returns sorted distinct ids of all nodes on the other side of scanned relationships
+    long[] getNeighbourIds() {
+        long[] ids = Arrays.copyOf(neighbourIds, neighbourCount);
+        Arrays.sort(ids);
+        int distinct = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[distinct - 1])
+                ids[distinct++] = ids[i];
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    /// returns count of scanned relationships, self-loops are counted twice
+    int getScannedRelationships() {
+        return incomingCount + outgoingCount;
+    }
+
+    /// returns true if the node still has as many relationships as were scanned, only degrees are compared, relationships are not read.
+    /// Relationships added while the same number was deleted keep the degrees, the caller finds them with wasScanned
+    /// when it reads the relationships of the node anyway
+    boolean isCurrent(Node node) {
+        return node.getDegree(Direction.INCOMING) == incomingCount && node.getDegree(Direction.OUTGOING) == outgoingCount;
+    }
+
+    /// returns true if the relationship was read by the scan
+    boolean wasScanned(long relationshipId) {
+        return relationshipIds.contains(relationshipId);
+    }
+
+    List<Relationship> getIncoming(String relationType) {
+        return incoming.getOrDefault(relationType, Collections.emptyList());
+    }
+
+    List<Relationship> getOutgoing(String relationType) {
+        return outgoing.getOrDefault(relationType, Collections.emptyList());
+    }
+
+    List<Relationship> getIgnoredIncoming() {
+        return ignoredIncoming;
+    }
+
+    List<Relationship> getIgnoredOutgoing() {
+        return ignoredOutgoing;
+    }
+}
@@ -0,0 +1,50 @@
+package splitter;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Relationship of the split node read once: its type, node on the other side and properties.
+ */
+final class RelationshipSnapshot {
+    private final RelationshipType type;
+    private final Node otherNode;
+    private final PropertySnapshot properties;
+
+    private RelationshipSnapshot(RelationshipType type, Node otherNode, PropertySnapshot properties) {
+        this.type = type;
+        this.otherNode = otherNode;
+        this.properties = properties;
+    }
+
+    /// direction is the direction of relationship from the split node
+    static RelationshipSnapshot of(Relationship relationship, Direction direction) {
+        Node otherNode = direction == Direction.INCOMING ? relationship.getStartNode() : relationship.getEndNode();
+        return new RelationshipSnapshot(relationship.getType(), otherNode, PropertySnapshot.of(relationship));
+    }
+
+    static List<RelationshipSnapshot> of(List<Relationship> relationships, Direction direction) {
+        List<RelationshipSnapshot> snapshots = new ArrayList<>(relationships.size());
+        for (Relationship relationship : relationships) {
+            snapshots.add(of(relationship, direction));
+        }
+        return snapshots;
+    }
+
+    RelationshipType getType() {
+        return type;
+    }
+
+    Node getOtherNode() {
+        return otherNode;
+    }
+
+    PropertySnapshot getProperties() {
+        return properties;
+    }
+}
@@ -0,0 +1,78 @@
+package splitter;
+
+import org.eclipse.collections.api.set.primitive.LongSet;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import splitter.config.SplitNodeConfiguration;
+
+import java.util.List;
+
+/**
+ * Splits nodes one by one in the transaction of the calling thread.
+ * Keeps count of split and skipped source nodes, created nodes and relationships, taken locks
+ * and time spent in each phase of splitting.
+ */
+interface SplitEngine {
+    String CORE = "core";
+    String KERNEL = "kernel";
+
+    /// label and property of junction nodes created in junction topology
+    Label JUNCTION_LABEL = Label.label("SplitJunction");
+    String JUNCTION_TYPE_PROPERTY = "splitType";
+
+    /// label of prototype nodes which keep properties of the source node in prototype property mode
+    /// and type of relationships from split nodes to their prototype node
+    Label PROTOTYPE_LABEL = Label.label("SplitPrototype");
+    RelationshipType PROTOTYPE_TYPE = RelationshipType.withName("SPLIT_PROTOTYPE");
+
+    /// phases of splitting a node: reading relationships and properties of the source node, creating split nodes with copies
+    /// of their own relationships, linking entry and exit nodes, copying ignored relationships and deleting the source node
+    enum Phase { SCAN, CREATE, LINK, REPAIR, DELETE }
+
+    /// returns engine selected by configuration
+    static SplitEngine create(GraphDatabaseService db, SplitNodeConfiguration config) {
+        return KERNEL.equals(config.getEngine()) ? new KernelNodeSplitter(db, config) : new NodeSplitter(db, config);
+    }
+
+    /// splits the node in the current transaction, returns created nodes
+    /// or empty list if node was left as is
+    List<Node> split(Node node);
+
+    long getSplitNodes();
+
+    long getCreatedNodes();
+
+    /// returns count of created nodes for incoming relationships
+    long getEntryNodes();
+
+    /// returns count of created nodes for outgoing relationships
+    long getExitNodes();
+
+    /// returns count of created prototype nodes, one for each source node split in prototype property mode
+    long getPrototypeNodes();
+
+    long getCreatedRelationships();
+
+    /// returns ids of all nodes created by this engine
+    LongSet getCreatedNodeIds();
+
+    /// returns count of nodes which were not split because of maxCreatedRelationships or maxFanOut limits
+    long getSkippedNodes();
+
+    /// returns reasons of the first skipped nodes
+    List<String> getSkippedMessages();
+
+    long getLockCount();
+
+    long getLockWaitNanos();
+
+    /// returns count of relationships read from source nodes, relationships read again after a concurrent change are counted twice
+    long getScannedRelationships();
+
+    /// returns count of properties written to created nodes and relationships
+    long getCopiedProperties();
+
+    long getPhaseNanos(Phase phase);
+}
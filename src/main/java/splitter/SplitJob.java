@@ -0,0 +1,130 @@
+package splitter;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.logging.Log;
+import splitter.config.SplitNodeConfiguration;
+import splitter.results.SplitBatchResult;
+import splitter.results.SplitJobResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Split of a list of nodes which runs in the background after the submitting call has returned.
+ * Each job commits every batchSize source nodes in its own transaction, cancellation takes effect after the current batch.
+ */
+class SplitJob implements Runnable {
+    private static final String QUEUED = "queued";
+    private static final String RUNNING = "running";
+    private static final String FINISHED = "finished";
+    private static final String FAILED = "failed";
+    private static final String CANCELLED = "cancelled";
+
+    private static final int MAX_ERRORS = 10;
+
+    private final SplitJobs jobs;
+    private final long id;
+    private final GraphDatabaseService db;
+    private final SplitNodeConfiguration config;
+    private final Log log;
+    private final long[] nodeIds;
+    private final long submittedAt = System.currentTimeMillis();
+    private volatile String state = QUEUED;
+    private volatile boolean cancelled;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder processedNodes = new LongAdder();
+    private final LongAdder createdNodes = new LongAdder();
+    private final LongAdder createdRelationships = new LongAdder();
+    private final LongAdder failedNodes = new LongAdder();
+    private final LongAdder skippedNodes = new LongAdder();
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+
+    SplitJob(SplitJobs jobs, long id, GraphDatabaseService db, SplitNodeConfiguration config, Log log, long[] nodeIds) {
+        this.jobs = jobs;
+        this.id = id;
+        this.db = db;
+        this.config = config;
+        this.log = log;
+        this.nodeIds = nodeIds;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    @Override
+    public void run() {
+        if (cancelled) {
+            //cancelled after the worker took the job from the queue
+            state = CANCELLED;
+            return;
+        }
+        state = RUNNING;
+        startNanos = System.nanoTime();
+        SplitStatistics statistics = SplitStatistics.start("splitter.submit");
+        BatchedSplitter splitter = new BatchedSplitter(db, config, statistics);
+        try {
+            for (int start = 0; start < nodeIds.length && !cancelled; start += config.getBatchSize()) {
+                List<Long> ids = new ArrayList<>(Math.min(config.getBatchSize(), nodeIds.length - start));
+                for (int i = start; i < nodeIds.length && ids.size() < config.getBatchSize(); i++) {
+                    ids.add(nodeIds[i]);
+                }
+                add(splitter.splitBatch(0, batches.sum(), ids));
+            }
+            state = cancelled ? CANCELLED : FINISHED;
+        } catch (RuntimeException e) {
+            addError(e.getClass().getSimpleName() + ": " + e.getMessage());
+            state = FAILED;
+            log.error("splitter.submit job " + id + " failed", e);
+        } finally {
+            endNanos = System.nanoTime();
+            statistics.finish(log, config.getSlowCallMillis());
+        }
+    }
+
+    private void add(SplitBatchResult batch) {
+        batches.increment();
+        processedNodes.add(batch.sourceNodes);
+        createdNodes.add(batch.createdNodes);
+        createdRelationships.add(batch.createdRelationships);
+        failedNodes.add(batch.failedNodes);
+        skippedNodes.add(batch.skippedNodes);
+        batch.errors.forEach(this::addError);
+    }
+
+    private void addError(String error) {
+        if (errors.size() < MAX_ERRORS)
+            errors.add(error);
+    }
+
+    /// waiting job is removed from the queue, running job stops after its current batch is committed
+    void cancel() {
+        if (isDone())
+            return;
+        cancelled = true;
+        if (jobs.dequeue(this))
+            state = CANCELLED;
+    }
+
+    boolean isDone() {
+        String state = this.state;
+        return FINISHED.equals(state) || FAILED.equals(state) || CANCELLED.equals(state);
+    }
+
+    SplitJobResult toResult() {
+        long start = startNanos;
+        long end = endNanos;
+        long nanos = start == 0 ? 0 : (end == 0 ? System.nanoTime() : end) - start;
+        double seconds = nanos / 1e9;
+        long processed = processedNodes.sum();
+        long relationships = createdRelationships.sum();
+        return new SplitJobResult(id, state, submittedAt, nodeIds.length, processed, batches.sum(), createdNodes.sum(), relationships,
+                failedNodes.sum(), skippedNodes.sum(), TimeUnit.NANOSECONDS.toMillis(nanos),
+                seconds == 0 ? 0 : processed / seconds, seconds == 0 ? 0 : relationships / seconds, new ArrayList<>(errors));
+    }
+}
@@ -0,0 +1,155 @@
+package splitter;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+import org.neo4j.logging.Log;
+import splitter.config.SplitNodeConfiguration;
+import splitter.results.SplitJobResult;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Background split jobs of one database.
+ * Jobs are executed by a bounded pool of worker threads shared by all calls, waiting jobs are kept in a bounded queue
+ * and a job submitted to a full queue is rejected, so clients have to wait until running jobs finish.
+ * The pool lives as long as the database: it is started with the database by {@link SplitJobsExtensionFactory}
+ * and on stop waiting and running jobs are cancelled before the database shuts down.
+ */
+class SplitJobs extends LifecycleAdapter {
+    static final String MAX_RUNNING_JOBS_SETTING = "splitter.jobs.max_running";
+    static final String MAX_QUEUED_JOBS_SETTING = "splitter.jobs.max_queued";
+    private static final int DEFAULT_MAX_RUNNING_JOBS = 2;
+    private static final int DEFAULT_MAX_QUEUED_JOBS = 16;
+    private static final int MAX_FINISHED_JOBS = 20;
+    //running jobs get this time to commit their current batch when the database stops
+    private static final long STOP_TIMEOUT_SECONDS = 60;
+    //started job pools by database directory, procedures get their own database facade, so it can not be the key
+    private static final Map<File, SplitJobs> STARTED = new ConcurrentHashMap<>();
+
+    private final GraphDatabaseAPI db;
+    private final Log log;
+    private final int maxRunningJobs;
+    private final int maxQueuedJobs;
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<Long, SplitJob> jobs = new ConcurrentSkipListMap<>();
+    private ThreadPoolExecutor executor;
+
+    SplitJobs(GraphDatabaseAPI db, Config config, Log log) {
+        this.db = db;
+        this.log = log;
+        this.maxRunningJobs = setting(config, MAX_RUNNING_JOBS_SETTING, DEFAULT_MAX_RUNNING_JOBS);
+        this.maxQueuedJobs = setting(config, MAX_QUEUED_JOBS_SETTING, DEFAULT_MAX_QUEUED_JOBS);
+    }
+
+    private static int setting(Config config, String name, int defaultValue) {
+        String value = config.getRaw(name).orElse(null);
+        if (value == null)
+            return defaultValue;
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result > 0)
+                return result;
+        } catch (NumberFormatException e) {
+            //reported below
+        }
+        throw new RuntimeException(name + " should be a positive integer");
+    }
+
+    /// returns job pool of the database, throws if the plugin extension is not loaded or the database is stopping
+    static SplitJobs of(GraphDatabaseService db) {
+        SplitJobs jobs = STARTED.get(directory((GraphDatabaseAPI) db));
+        if (jobs == null)
+            throw new RuntimeException("Background jobs are not available, the database is stopping or the plugin is not installed in the plugins directory");
+        return jobs;
+    }
+
+    private static File directory(GraphDatabaseAPI db) {
+        return db.databaseLayout().databaseDirectory();
+    }
+
+    @Override
+    public void start() {
+        executor = new ThreadPoolExecutor(maxRunningJobs, maxRunningJobs, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueuedJobs), new JobThreadFactory());
+        STARTED.put(directory(db), this);
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        STARTED.remove(directory(db), this);
+        for (SplitJob job : jobs.values()) {
+            job.cancel();
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            log.warn("splitter jobs did not stop in %d seconds, interrupting them", STOP_TIMEOUT_SECONDS);
+            executor.shutdownNow();
+        }
+    }
+
+    /// queues a job which splits the nodes, throws if the queue is full
+    SplitJob submit(SplitNodeConfiguration config, long[] nodeIds) {
+        removeFinishedJobs();
+        SplitJob job = new SplitJob(this, nextId.getAndIncrement(), db, config, log, nodeIds);
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new RuntimeException("Unable to submit job, " + maxQueuedJobs + " jobs are already waiting, retry when some of them are finished");
+        }
+        return job;
+    }
+
+    /// returns the job or null if it is not known or was removed after finishing
+    SplitJob get(long id) {
+        return jobs.get(id);
+    }
+
+    /// returns jobs in order of submission
+    Stream<SplitJobResult> results() {
+        List<SplitJobResult> results = new ArrayList<>();
+        for (SplitJob job : jobs.values()) {
+            results.add(job.toResult());
+        }
+        return results.stream();
+    }
+
+    /// removes a waiting job from the queue, returns false if a worker has already taken it
+    boolean dequeue(SplitJob job) {
+        return executor.remove(job);
+    }
+
+    /// only the latest finished jobs are kept
+    private void removeFinishedJobs() {
+        List<Long> finished = new ArrayList<>();
+        for (SplitJob job : jobs.values()) {
+            if (job.isDone())
+                finished.add(job.getId());
+        }
+        for (int i = 0; i < finished.size() - MAX_FINISHED_JOBS; i++) {
+            jobs.remove(finished.get(i));
+        }
+    }
+
+    /// daemon threads, so running jobs do not keep the database process alive
+    private static final class JobThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "splitter-job-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
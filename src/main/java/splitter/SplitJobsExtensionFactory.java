@@ -0,0 +1,33 @@
+package splitter;
+
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.extension.ExtensionType;
+import org.neo4j.kernel.extension.KernelExtensionFactory;
+import org.neo4j.kernel.impl.logging.LogService;
+import org.neo4j.kernel.impl.spi.KernelContext;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.kernel.lifecycle.Lifecycle;
+
+/**
+ * Starts the pool of background split jobs with each database and stops it with the database,
+ * loaded by Neo4j from META-INF/services when the plugin jar is in the plugins directory.
+ */
+public class SplitJobsExtensionFactory extends KernelExtensionFactory<SplitJobsExtensionFactory.Dependencies> {
+
+    public interface Dependencies {
+        GraphDatabaseAPI graphdatabaseAPI();
+
+        Config config();
+
+        LogService log();
+    }
+
+    public SplitJobsExtensionFactory() {
+        super(ExtensionType.DATABASE, "splitter-jobs");
+    }
+
+    @Override
+    public Lifecycle newInstance(KernelContext context, Dependencies dependencies) {
+        return new SplitJobs(dependencies.graphdatabaseAPI(), dependencies.config(), dependencies.log().getUserLog(SplitJobs.class));
+    }
+}
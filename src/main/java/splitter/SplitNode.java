@@ -1,190 +1,201 @@
 package splitter;
 
 import org.neo4j.graphdb.*;
-import org.neo4j.helpers.collection.Iterables;
+import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 import splitter.config.SplitNodeConfiguration;
+import splitter.results.SplitBatchResult;
+import splitter.results.SplitIncrementResult;
+import splitter.results.SplitJobResult;
 import splitter.results.SplitNodeResult;
+import splitter.results.SplitPlanResult;
+import splitter.results.SplitPropertiesResult;
+import splitter.results.SplitStatsResult;
+import splitter.results.SplitSummaryResult;
+import splitter.results.SupernodeSplitResult;
 
 import java.util.*;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class SplitNode {
     @Context
     public GraphDatabaseService db;
 
+    @Context
+    public Log log;
+
     @Procedure(mode = Mode.WRITE)
     @Description("splitter.splitNodes([node1, node2]], {startIndex:0, indexProperty: 'Index', relationshipTypes: ['Type1', 'Type2'], greedyRelationTypes: ['Type3', 'Type4']}) Split each node from list into multiple nodes based on relationships with specified types")
     public Stream<SplitNodeResult> splitNodes(@Name("nodes") List<Node> nodes, @Name("configuration") Map<String,Object> configuration) {
         SplitNodeConfiguration config = SplitNodeConfiguration.build(configuration);
-        return nodes.stream().flatMap(node -> splitNode(node, config).stream()).filter(Objects::nonNull).map(SplitNodeResult::new);
+        String procedure = "splitter.splitNodes";
+        SplitStatistics statistics = SplitStatistics.start(procedure);
+        SplitEngine splitter = SplitEngine.create(db, config);
+        //source nodes are split one by one as rows are consumed, so the first rows reach the client before the whole list is split
+        return nodes.stream().flatMap(node -> splitter.split(node).stream()).filter(Objects::nonNull).map(SplitNodeResult::new)
+                .onClose(() -> finishSplit(procedure, statistics, config, splitter));
     }
 
-    private List<Node> splitNode(Node node, SplitNodeConfiguration config) {
-        if (node == null || node.getDegree() == 0)
-            return Collections.emptyList();
-
-        Transaction tx = db.beginTx();
-        tx.acquireWriteLock(node);
+    @Procedure(mode = Mode.WRITE)
+    @Description("splitter.splitNodesSummary([node1, node2]], {summary: 'source', startIndex:0, indexProperty: 'Index', relationshipTypes: ['Type1', 'Type2'], greedyRelationTypes: ['Type3', 'Type4']}) Split nodes like splitter.splitNodes, but return counts of created nodes and relationships for each source node (summary: 'source') or for the whole call (summary: 'call') instead of created nodes")
+    public Stream<SplitSummaryResult> splitNodesSummary(@Name("nodes") List<Node> nodes, @Name("configuration") Map<String,Object> configuration) {
+        SplitNodeConfiguration config = SplitNodeConfiguration.build(configuration);
+        String procedure = "splitter.splitNodesSummary";
+        SplitStatistics statistics = SplitStatistics.start(procedure);
+        SplitEngine splitter = SplitEngine.create(db, config);
+        Stream<SplitSummaryResult> results;
+        if (config.isCallSummary()) {
+            SplitSummary summary = new SplitSummary(config, null);
+            nodes.stream().filter(Objects::nonNull).forEach(node -> summary.split(splitter, node));
+            results = Stream.of(summary.toResult());
+        } else {
+            results = nodes.stream().filter(Objects::nonNull).map(node -> {
+                SplitSummary summary = new SplitSummary(config, node.getId());
+                summary.split(splitter, node);
+                return summary.toResult();
+            });
+        }
+        return results.onClose(() -> finishSplit(procedure, statistics, config, splitter));
+    }
 
-        //collecting incoming relationships for which new nodes will not be created
-        ArrayList<Relationship> ignoreIncomingRelationships = new ArrayList<>();
-        node.getRelationships(Direction.INCOMING).forEach(relationship -> {
-            tx.acquireWriteLock(relationship.getOtherNode(node));
-            if (!config.getRelationshipTypes().contains(relationship.getType().name())
-                && !config.getGreedyRelationshipTypes().contains(relationship.getType().name())) {
-                ignoreIncomingRelationships.add(relationship);
-            }
-        });
+    @Procedure(mode = Mode.WRITE)
+    @Description("splitter.splitNodesBatched([node1, node2]], {batchSize: 1000, startIndex:0, indexProperty: 'Index', relationshipTypes: ['Type1', 'Type2'], greedyRelationTypes: ['Type3', 'Type4']}) Split nodes committing every batchSize source nodes in a separate transaction, returns summary for each batch")
+    public Stream<SplitBatchResult> splitNodesBatched(@Name("nodes") List<Node> nodes, @Name("configuration") Map<String,Object> configuration) {
+        SplitNodeConfiguration config = SplitNodeConfiguration.build(configuration);
+        SplitStatistics statistics = SplitStatistics.start("splitter.splitNodesBatched");
+        return new BatchedSplitter(db, config, statistics).split(nodes.stream().filter(Objects::nonNull).map(Node::getId).iterator())
+                .onClose(() -> statistics.finish(log, config.getSlowCallMillis()));
+    }
 
-        //collecting outgoing relationships for which new nodes will not be created
-        ArrayList<Relationship> ignoreOutgoingRelationships = new ArrayList<>();
-        node.getRelationships(Direction.OUTGOING).forEach(relationship -> {
-            tx.acquireWriteLock(relationship.getOtherNode(node));
-            if (!config.getRelationshipTypes().contains(relationship.getType().name())
-                && !config.getGreedyRelationshipTypes().contains(relationship.getType().name())) {
-                ignoreOutgoingRelationships.add(relationship);
-            }
-        });
+    @Procedure(mode = Mode.WRITE)
+    @Description("splitter.splitNodesParallel([node1, node2]], {parallelism: 8, batchSize: 1000, startIndex:0, indexProperty: 'Index', relationshipTypes: ['Type1', 'Type2'], greedyRelationTypes: ['Type3', 'Type4']}) Split nodes on parallelism worker threads, nodes with common neighbours are split by the same worker, returns summary for each batch")
+    public Stream<SplitBatchResult> splitNodesParallel(@Name("nodes") List<Node> nodes, @Name("configuration") Map<String,Object> configuration) {
+        SplitNodeConfiguration config = SplitNodeConfiguration.build(configuration);
+        SplitStatistics statistics = SplitStatistics.start("splitter.splitNodesParallel");
+        return new ParallelSplitter(db, config, statistics).split(nodes)
+                .onClose(() -> statistics.finish(log, config.getSlowCallMillis()));
+    }
 
-        int index = config.getStartIndex();
-        String indexProperty = config.getIndexPropertyName();
-        //collections for created nodes
-        List<Node> entrySplitNodes = new ArrayList<>();
-        List<Node> exitSplitNodes = new ArrayList<>();
+    @Procedure(mode = Mode.WRITE)
+    @Description("splitter.splitNodesByLabel('Label', {filterProperty: 'Name', filterValue: 'Value', batchSize: 1000, startIndex:0, indexProperty: 'Index', relationshipTypes: ['Type1', 'Type2'], greedyRelationTypes: ['Type3', 'Type4']}) Split nodes with label (and property value) as they are found, committing every batchSize source nodes in a separate transaction, returns summary for each batch")
+    public Stream<SplitBatchResult> splitNodesByLabel(@Name("label") String label, @Name("configuration") Map<String,Object> configuration) {
+        SplitNodeConfiguration config = SplitNodeConfiguration.build(configuration);
+        SplitStatistics statistics = SplitStatistics.start("splitter.splitNodesByLabel");
+        BatchedSplitter splitter = new BatchedSplitter(db, config, statistics).trackCreatedNodes(NodeSource.highestNodeId(db));
+        Stream<Long> nodeIds = NodeSource.findByLabel(db, label, config, splitter::isCreatedNode);
+        return splitter.split(nodeIds.iterator()).onClose(nodeIds::close)
+                .onClose(() -> statistics.finish(log, config.getSlowCallMillis()));
+    }
 
-        for(String relationType: config.getRelationshipTypes()) {
-            //for each "non-greedy" type of relationship create nodes and copy relationships separately
-            index += createSplitNodesForRelationsipType(tx, node, relationType, indexProperty, index, new ArrayList<>(), entrySplitNodes, exitSplitNodes);
+    @Procedure(mode = Mode.WRITE)
+    @Description("splitter.splitSupernode(node, {windowSize: 10000, maxWindows: 100, startIndex:0, indexProperty: 'Index', relationshipTypes: ['Type1', 'Type2'], greedyRelationTypes: ['Type3', 'Type4']}) Split a node with a large number of relationships committing every windowSize relationships in a separate transaction, an interrupted split is resumed by calling the procedure again")
+    public Stream<SupernodeSplitResult> splitSupernode(@Name("node") Node node, @Name("configuration") Map<String,Object> configuration) {
+        SplitNodeConfiguration config = SplitNodeConfiguration.build(configuration);
+        long start = System.currentTimeMillis();
+        SplitStatistics statistics = SplitStatistics.start("splitter.splitSupernode");
+        SupernodeSplitter splitter = new SupernodeSplitter(db, config);
+        try {
+            splitter.split(node.getId());
+        } finally {
+            statistics.add(splitter);
+            statistics.finish(log, config.getSlowCallMillis());
         }
+        return Stream.of(new SupernodeSplitResult(node.getId(), splitter.getWindows(), splitter.getEntryNodes(), splitter.getExitNodes(),
+                splitter.getJunctionNodes(), splitter.getCreatedRelationships(), splitter.getDeletedRelationships(), System.currentTimeMillis() - start,
+                splitter.isCompleted()));
+    }
 
-        //collection for nodes which were created for outgoing "non-greedy" relationships
-        //additional incoming "greedy" relationships will be created for this nodes
-        List<Node> exitSplitNodesForNonGreedyRelationships = new ArrayList<>(exitSplitNodes);
-
-        for(String relationType: config.getGreedyRelationshipTypes()) {
-            //for each "greedy" type of relationship create nodes and copy relationships separately
-            index += createSplitNodesForRelationsipType(tx, node, relationType, indexProperty, index, exitSplitNodesForNonGreedyRelationships, entrySplitNodes, exitSplitNodes);
+    @Procedure(mode = Mode.WRITE)
+    @Description("splitter.resplitNodes([node1, node2], [relationship1, relationship2], {indexProperty: 'Index', relationshipTypes: ['Type1', 'Type2'], greedyRelationTypes: ['Type3', 'Type4']}) Split relationships added to nodes of an already split family into new entry and exit nodes, indexes continue from the highest index of the family")
+    public Stream<SplitIncrementResult> resplitNodes(@Name("family") List<Node> family, @Name("relationships") List<Relationship> relationships, @Name("configuration") Map<String,Object> configuration) {
+        SplitNodeConfiguration config = SplitNodeConfiguration.build(configuration);
+        //new nodes are linked to the whole family, so there is no split which could be skipped or run by the kernel engine
+        if (!"core".equals(config.getEngine()))
+            throw new RuntimeException("splitter.resplitNodes supports only the core engine");
+        if (config.getMaxCreatedRelationships() != Long.MAX_VALUE || config.getMaxFanOut() != Long.MAX_VALUE)
+            throw new RuntimeException("splitter.resplitNodes does not support maxCreatedRelationships and maxFanOut");
+        SplitStatistics statistics = SplitStatistics.start("splitter.resplitNodes");
+        IncrementalSplitter splitter = new IncrementalSplitter(db, config);
+        try {
+            splitter.split(family, relationships);
+        } finally {
+            statistics.add(splitter);
+            statistics.finish(log, config.getSlowCallMillis());
         }
+        Integer minIndex = splitter.getMinIndex();
+        Integer maxIndex = splitter.getMaxIndex();
+        return Stream.of(new SplitIncrementResult(splitter.getCreatedEntryNodes(), splitter.getCreatedExitNodes(), splitter.getCreatedRelationships(),
+                splitter.getSkippedRelationships(), minIndex == null ? null : minIndex.longValue(), maxIndex == null ? null : maxIndex.longValue()));
+    }
 
-        //if no nodes were created return empty collection and leave source node alone
-        if (entrySplitNodes.isEmpty() && exitSplitNodes.isEmpty())
-            return Collections.emptyList();
-
-        //copy relationships for which new nodes were not created for each created node
-        repairRelationships(entrySplitNodes, exitSplitNodes, ignoreIncomingRelationships, ignoreOutgoingRelationships);
-
-        //delete source node
-        detachDeleteNode(node);
-        return Stream.concat(entrySplitNodes.stream(), exitSplitNodes.stream()).collect(Collectors.toList());
-    }
-
-    /// returns count of created nodes
-    private int createSplitNodesForRelationsipType(Transaction tx, Node node, String relationType, String indexProperty, int startIndex, List<Node> nonGreedyExitNodes, List<Node> resultEntryNodes, List<Node> resultExitNodes) {
-        //collect source node relationships of target type
-        List<Relationship> incomingRelationships = getRelationsips(tx, node, Direction.INCOMING, relationType);
-        List<Relationship> outgoingRelationships = getRelationsips(tx, node, Direction.OUTGOING, relationType);
-
-        //if incoming relationships not found or no and will not be nodes with outgoing relationships
-        //then exit
-        if (incomingRelationships.isEmpty() || (outgoingRelationships.isEmpty() && nonGreedyExitNodes.isEmpty()))
-            return 0;
-
-        int index = startIndex;
-        //create separate node for each incoming relationship of target type
-        List<Node> enterNodes = createSplitNodesForRelationsips(node, incomingRelationships, indexProperty, index, Direction.INCOMING);
-        index += enterNodes.size();
-        //create separate node for each outgoing relationship of target type
-        List<Node> exitNodes = createSplitNodesForRelationsips(node, outgoingRelationships, indexProperty, index, Direction.OUTGOING);
-
-        //copy relationships
-        for (Node enterNode : enterNodes) {
-            Relationship relationship = Iterables.first(enterNode.getRelationships());
-            for (Node exitNode : exitNodes) {
-                //copy relationship and connect incoming and outgoing nodes
-                createRelationship(enterNode, exitNode, relationship);
-            }
-            //if nonGreedyExitNodes is not empty then this relationship type is "greedy"
-            //so connect "greedy" entry node to "non-greedy" exit node
-            for (Node exitNode : nonGreedyExitNodes) {
-                //copy relationship and connect incoming and outgoing "non-greedy" nodes
-                createRelationship(enterNode, exitNode, relationship);
-            }
-        }
-        //copy created nodes to result collections
-        resultEntryNodes.addAll(enterNodes);
-        resultExitNodes.addAll(exitNodes);
-        return enterNodes.size() + exitNodes.size();
-    }
-
-    private List<Relationship> getRelationsips(Transaction tx, Node node, Direction direction, String relationType) {
-        ArrayList<Relationship> result = new ArrayList<>();
-        node.getRelationships(direction).forEach(relationship -> {
-            tx.acquireWriteLock(relationship.getOtherNode(node));
-            if (relationship.getType().name().equals(relationType)) {
-                result.add(relationship);
-            }
-        });
-        return result;
+    @Procedure(mode = Mode.WRITE)
+    @Description("splitter.submit([node1, node2]], {batchSize: 1000, startIndex:0, indexProperty: 'Index', relationshipTypes: ['Type1', 'Type2'], greedyRelationTypes: ['Type3', 'Type4']}) Submit a background job which splits nodes committing every batchSize source nodes, returns the queued job at once, fails if the job queue is full")
+    public Stream<SplitJobResult> submit(@Name("nodes") List<Node> nodes, @Name("configuration") Map<String,Object> configuration) {
+        SplitNodeConfiguration config = SplitNodeConfiguration.build(configuration);
+        long[] nodeIds = nodes.stream().filter(Objects::nonNull).mapToLong(Node::getId).toArray();
+        return Stream.of(SplitJobs.of(db).submit(config, nodeIds).toResult());
     }
 
-    private void createRelationship(Node from, Node to, Relationship source) {
-        Relationship relationship = from.createRelationshipTo(to, source.getType());
-        source.getAllProperties().forEach(relationship::setProperty);
+    @Procedure(mode = Mode.READ)
+    @Description("splitter.jobs() Return progress of waiting, running and the latest finished jobs in order of submission")
+    public Stream<SplitJobResult> jobs() {
+        return SplitJobs.of(db).results();
     }
 
-    private void detachDeleteNode(Node node) {
-        node.getRelationships().forEach(Relationship::delete);
-        node.delete();
+    @Procedure(mode = Mode.READ)
+    @Description("splitter.job(jobId) Return progress of the job, nothing if the job is not known")
+    public Stream<SplitJobResult> job(@Name("jobId") long jobId) {
+        SplitJob job = SplitJobs.of(db).get(jobId);
+        return job == null ? Stream.empty() : Stream.of(job.toResult());
     }
 
-    private Relationship createRelationship(Node targetNode, Node otherNode, Direction direction, RelationshipType type) {
-        if (direction == Direction.INCOMING) {
-            return otherNode.createRelationshipTo(targetNode, type);
-        } else {
-            return targetNode.createRelationshipTo(otherNode, type);
-        }
+    @Procedure(mode = Mode.READ)
+    @Description("splitter.cancel(jobId) Cancel the job, a waiting job is removed from the queue, a running job stops after its current batch is committed, returns progress of the job")
+    public Stream<SplitJobResult> cancel(@Name("jobId") long jobId) {
+        SplitJob job = SplitJobs.of(db).get(jobId);
+        if (job == null)
+            return Stream.empty();
+        job.cancel();
+        return Stream.of(job.toResult());
     }
 
-    private List<Node> createSplitNodesForRelationsips(Node source, List<Relationship> relationships, String indexProperty, int startIndex, Direction direction) {
-        ArrayList<Node> splitNodes = new ArrayList<>(relationships.size());
-        for (Relationship relationship : relationships) {
-            Node splitNode = createSplitNode(source, indexProperty, startIndex);
-            if (direction == Direction.INCOMING) {
-                Node otherNode = relationship.getStartNode();
-                createRelationship(otherNode, splitNode, relationship);
-            } else {
-                Node otherNode = relationship.getEndNode();
-                createRelationship(splitNode, otherNode, relationship);
-            }
-            startIndex++;
-            splitNodes.add(splitNode);
-        }
-        return splitNodes;
+    @Procedure(mode = Mode.READ)
+    @Description("splitter.planSplit([node1, node2]], {indexProperty: 'Index', relationshipTypes: ['Type1', 'Type2'], greedyRelationTypes: ['Type3', 'Type4']}) Count nodes, relationships and property writes which splitting of each node would cause, nothing is written")
+    public Stream<SplitPlanResult> planSplit(@Name("nodes") List<Node> nodes, @Name("configuration") Map<String,Object> configuration) {
+        SplitNodeConfiguration config = SplitNodeConfiguration.build(configuration);
+        return nodes.stream().filter(Objects::nonNull).map(node -> {
+            SplitPlan plan = SplitPlan.of(node, config).countPropertyWrites(node);
+            return new SplitPlanResult(node, plan.getEntryNodes(), plan.getExitNodes(), plan.getJunctionNodes(), plan.getCreatedNodes(), plan.getCreatedRelationships(), plan.getDeletedRelationships(),
+                    plan.getPropertyWrites(), plan.getMaxFanOut(), plan.getEstimatedMemoryBytes());
+        });
     }
 
-    private Node createSplitNode(Node source, String indexPropertyName, int index) {
-        Label[] labels = Iterables.asArray(Label.class, source.getLabels());
-        Node node = db.createNode(labels);
-        if (indexPropertyName != null) { node.setProperty(indexPropertyName, index); }
-        source.getAllProperties().forEach(node::setProperty);
-        return node;
+    @Procedure(mode = Mode.READ)
+    @Description("splitter.properties([node1, node2]) Return properties of each node resolved through its prototype nodes, properties of the node itself override properties of prototypes")
+    public Stream<SplitPropertiesResult> properties(@Name("nodes") List<Node> nodes) {
+        return nodes.stream().filter(Objects::nonNull).map(node -> new SplitPropertiesResult(node, resolveProperties(node)));
     }
 
-    private void repairRelationships(List<Node> enterNodes, List<Node> exitNodes, List<Relationship> incoming, List<Relationship> outgoing) {
-        enterNodes.forEach(enterNode -> repairRelationships(enterNode, incoming, Direction.INCOMING));
-        enterNodes.forEach(enterNode -> repairRelationships(enterNode, outgoing, Direction.OUTGOING));
-        exitNodes.forEach(exitNode -> repairRelationships(exitNode, incoming, Direction.INCOMING));
-        exitNodes.forEach(exitNode -> repairRelationships(exitNode, outgoing, Direction.OUTGOING));
+    @Procedure(mode = Mode.READ)
+    @Description("splitter.stats() Return counters and time per phase summed over all finished split calls, followed by counters of the latest calls")
+    public Stream<SplitStatsResult> stats() {
+        return SplitStatistics.results();
     }
 
-    private void repairRelationships(Node node, List<Relationship> relationships, Direction direction) {
-        if (direction == Direction.BOTH) return;
-        relationships.forEach(relationship -> {
-            Node otherNode = direction == Direction.INCOMING ? relationship.getStartNode() : relationship.getEndNode();
-            Relationship repairedRelationship = createRelationship(node, otherNode, direction, relationship.getType());
-            relationship.getAllProperties().forEach(repairedRelationship::setProperty);
-        });
+    /// nodes split again in prototype mode are linked to the prototype of each split
+    private static Map<String, Object> resolveProperties(Node node) {
+        Map<String, Object> properties = new HashMap<>();
+        for (Relationship relationship : node.getRelationships(Direction.OUTGOING, SplitEngine.PROTOTYPE_TYPE)) {
+            properties.putAll(relationship.getEndNode().getAllProperties());
+        }
+        properties.putAll(node.getAllProperties());
+        return properties;
+    }
+
+    private void finishSplit(String procedure, SplitStatistics statistics, SplitNodeConfiguration config, SplitEngine splitter) {
+        statistics.add(splitter);
+        statistics.finish(log, config.getSlowCallMillis());
+        if (splitter.getSkippedNodes() > 0)
+            log.warn("%s skipped %d nodes: %s", procedure, splitter.getSkippedNodes(), splitter.getSkippedMessages());
     }
 }
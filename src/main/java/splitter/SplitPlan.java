@@ -0,0 +1,230 @@
+package splitter;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.helpers.collection.Iterables;
+import splitter.config.SplitNodeConfiguration;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exact count of nodes and relationships which splitting of a node would create in the configured topology,
+ * computed from per-type degrees.
+ * Property writes are counted separately, because they require reading every relationship.
+ */
+final class SplitPlan {
+    //rough size of transaction state per created or deleted entity
+    private static final long NODE_BYTES = 200;
+    private static final long RELATIONSHIP_BYTES = 150;
+    private static final long PROPERTY_BYTES = 100;
+    private static final long DELETED_RELATIONSHIP_BYTES = 50;
+
+    private final SplitNodeConfiguration config;
+    //split types which create nodes with count of their incoming and outgoing relationships
+    private final Map<String, long[]> splitTypes = new HashMap<>();
+    private long entryNodes;
+    private long exitNodes;
+    private long createdRelationships;
+    private long deletedRelationships;
+    private long junctionNodes;
+    private long prototypeNodes;
+    //"non-greedy" exit nodes or, in junction topology, "non-greedy" junction nodes
+    private long nonGreedyExitNodes;
+    private long ignoredRelationships;
+    private long maxFanOut;
+    private long propertyWrites = -1;
+
+    private SplitPlan(SplitNodeConfiguration config) {
+        this.config = config;
+    }
+
+    static SplitPlan of(Node node, SplitNodeConfiguration config) {
+        SplitPlan plan = new SplitPlan(config);
+        plan.count(node);
+        return plan;
+    }
+
+    private void count(Node node) {
+        boolean junction = config.isJunctionTopology();
+        long configuredIncoming = 0;
+        long configuredOutgoing = 0;
+        //"non-greedy" entry and exit nodes are connected to each other (or to their junction node),
+        //exit nodes (or junction nodes) additionally get relationships from all "greedy" entry nodes (or junction nodes)
+        long maxNonGreedyEntryFanOut = 0;
+        long maxNonGreedyExitFanOut = 0;
+        for (String relationType : config.getRelationshipTypes()) {
+            RelationshipType type = RelationshipType.withName(relationType);
+            long in = node.getDegree(type, Direction.INCOMING);
+            long out = node.getDegree(type, Direction.OUTGOING);
+            configuredIncoming += in;
+            configuredOutgoing += out;
+            if (in == 0 || out == 0)
+                continue;
+            splitTypes.put(relationType, new long[]{in, out});
+            entryNodes += in;
+            exitNodes += out;
+            if (junction) {
+                junctionNodes++;
+                createdRelationships += 2 * (in + out);
+                maxNonGreedyExitFanOut = Math.max(maxNonGreedyExitFanOut, in + out);
+                nonGreedyExitNodes++;
+            } else {
+                createdRelationships += in + out + in * out;
+                maxNonGreedyEntryFanOut = Math.max(maxNonGreedyEntryFanOut, 1 + out);
+                maxNonGreedyExitFanOut = Math.max(maxNonGreedyExitFanOut, 1 + in);
+                nonGreedyExitNodes += out;
+            }
+        }
+
+        long greedyEntryNodes = 0;
+        long maxGreedyFanOut = 0;
+        for (String relationType : config.getGreedyRelationshipTypes()) {
+            RelationshipType type = RelationshipType.withName(relationType);
+            long in = node.getDegree(type, Direction.INCOMING);
+            long out = node.getDegree(type, Direction.OUTGOING);
+            configuredIncoming += in;
+            configuredOutgoing += out;
+            if (in == 0 || (out == 0 && nonGreedyExitNodes == 0))
+                continue;
+            splitTypes.put(relationType, new long[]{in, out});
+            entryNodes += in;
+            exitNodes += out;
+            if (junction) {
+                junctionNodes++;
+                greedyEntryNodes++;
+                createdRelationships += 2 * (in + out) + nonGreedyExitNodes;
+                maxGreedyFanOut = Math.max(maxGreedyFanOut, Math.max(2, in + out + nonGreedyExitNodes));
+            } else {
+                greedyEntryNodes += in;
+                createdRelationships += in + out + in * out + in * nonGreedyExitNodes;
+                maxGreedyFanOut = Math.max(maxGreedyFanOut, Math.max(1 + out + nonGreedyExitNodes, 1 + in));
+            }
+        }
+
+        if (entryNodes + exitNodes == 0)
+            return;
+
+        //relationships of other types are copied to each created entry and exit node
+        ignoredRelationships = node.getDegree(Direction.INCOMING) - configuredIncoming
+                + node.getDegree(Direction.OUTGOING) - configuredOutgoing;
+        createdRelationships += (entryNodes + exitNodes) * ignoredRelationships;
+        deletedRelationships = node.getDegree();
+        //in prototype mode each entry and exit node is linked to the prototype node
+        long prototypeLinks = config.isPrototypeProperties() ? 1 : 0;
+        prototypeNodes = prototypeLinks;
+        createdRelationships += (entryNodes + exitNodes) * prototypeLinks;
+        if (junction) {
+            //junction nodes do not get ignored relationships
+            maxFanOut = Math.max(2 + ignoredRelationships + prototypeLinks, Math.max(maxGreedyFanOut,
+                    maxNonGreedyExitFanOut == 0 ? 0 : maxNonGreedyExitFanOut + greedyEntryNodes));
+        } else {
+            maxFanOut = ignoredRelationships + prototypeLinks + Math.max(maxGreedyFanOut,
+                    Math.max(maxNonGreedyEntryFanOut, maxNonGreedyExitFanOut == 0 ? 0 : maxNonGreedyExitFanOut + greedyEntryNodes));
+        }
+        if (config.isPrototypeProperties())
+            maxFanOut = Math.max(maxFanOut, entryNodes + exitNodes);
+    }
+
+    /// reads all relationships of the node and counts properties which would be written to created nodes and relationships
+    SplitPlan countPropertyWrites(Node node) {
+        long createdNodes = entryNodes + exitNodes;
+        if (createdNodes == 0) {
+            propertyWrites = 0;
+            return this;
+        }
+        long allProperties = Iterables.count(node.getPropertyKeys());
+        long splitNodeProperties = allProperties;
+        if (config.isPrototypeProperties()) {
+            //split nodes get only kept properties, all properties are written once to the prototype node
+            splitNodeProperties = 0;
+            for (String key : node.getPropertyKeys()) {
+                if (config.getKeepProperties().contains(key))
+                    splitNodeProperties++;
+            }
+        }
+        long nodeProperties = splitNodeProperties + (config.getIndexPropertyName() == null ? 0 : 1);
+        //junction nodes get only the type property
+        long writes = createdNodes * nodeProperties + junctionNodes + (config.isPrototypeProperties() ? allProperties : 0);
+
+        RelationshipBuckets buckets = RelationshipBuckets.scan(node, config);
+        for (Map.Entry<String, long[]> splitType : splitTypes.entrySet()) {
+            long out = splitType.getValue()[1];
+            boolean greedy = !config.getRelationshipTypes().contains(splitType.getKey());
+            //incoming relationship is copied to its entry node and to each exit node (or junction node) it is linked to
+            long incomingCopies = config.isJunctionTopology() ? 2 : 1 + out + (greedy ? nonGreedyExitNodes : 0);
+            writes += incomingCopies * countProperties(buckets.getIncoming(splitType.getKey()));
+            writes += countProperties(buckets.getOutgoing(splitType.getKey()));
+        }
+        writes += createdNodes * countProperties(buckets.getIgnoredIncoming());
+        writes += createdNodes * countProperties(buckets.getIgnoredOutgoing());
+        propertyWrites = writes;
+        return this;
+    }
+
+    private static long countProperties(List<Relationship> relationships) {
+        long count = 0;
+        for (Relationship relationship : relationships) {
+            count += Iterables.count(relationship.getPropertyKeys());
+        }
+        return count;
+    }
+
+    long getEntryNodes() {
+        return entryNodes;
+    }
+
+    long getExitNodes() {
+        return exitNodes;
+    }
+
+    long getJunctionNodes() {
+        return junctionNodes;
+    }
+
+    long getPrototypeNodes() {
+        return prototypeNodes;
+    }
+
+    long getCreatedNodes() {
+        return entryNodes + exitNodes + junctionNodes + prototypeNodes;
+    }
+
+    long getCreatedRelationships() {
+        return createdRelationships;
+    }
+
+    long getDeletedRelationships() {
+        return deletedRelationships;
+    }
+
+    /// returns the largest count of relationships of a single created node
+    long getMaxFanOut() {
+        return maxFanOut;
+    }
+
+    /// returns why the split exceeds maxCreatedRelationships or maxFanOut, null if it does not
+    String exceededLimit() {
+        if (createdRelationships > config.getMaxCreatedRelationships())
+            return createdRelationships + " relationships would be created, maxCreatedRelationships is " + config.getMaxCreatedRelationships();
+        if (maxFanOut > config.getMaxFanOut())
+            return "created node would have " + maxFanOut + " relationships, maxFanOut is " + config.getMaxFanOut();
+        return null;
+    }
+
+    /// returns count of written properties or -1 if they were not counted
+    long getPropertyWrites() {
+        return propertyWrites;
+    }
+
+    /// returns rough size of transaction state required for splitting
+    long getEstimatedMemoryBytes() {
+        return getCreatedNodes() * NODE_BYTES
+                + createdRelationships * RELATIONSHIP_BYTES
+                + Math.max(0, propertyWrites) * PROPERTY_BYTES
+                + deletedRelationships * DELETED_RELATIONSHIP_BYTES;
+    }
+}
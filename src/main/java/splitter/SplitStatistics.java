@@ -0,0 +1,154 @@
+package splitter;
+
+import org.neo4j.logging.Log;
+import splitter.results.SplitStatsResult;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Counters of a single procedure call and cumulative counters of all finished calls.
+ * Engines count in plain fields and are added here when their work is done,
+ * counters are LongAdders, so workers of parallel calls add to them without contention.
+ */
+class SplitStatistics {
+    private static final int MAX_RECENT_CALLS = 20;
+    private static final SplitStatistics TOTAL = new SplitStatistics(null);
+    //the latest calls, running calls are included
+    private static final Deque<SplitStatistics> RECENT_CALLS = new ConcurrentLinkedDeque<>();
+
+    private final String procedure;
+    private final long startedAt = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = true;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder splitNodes = new LongAdder();
+    private final LongAdder skippedNodes = new LongAdder();
+    private final LongAdder scannedRelationships = new LongAdder();
+    private final LongAdder locks = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    private final LongAdder createdNodes = new LongAdder();
+    private final LongAdder createdRelationships = new LongAdder();
+    private final LongAdder copiedProperties = new LongAdder();
+    private final LongAdder[] phaseNanos = new LongAdder[SplitEngine.Phase.values().length];
+    private final LongAdder timeNanos = new LongAdder();
+
+    private SplitStatistics(String procedure) {
+        this.procedure = procedure;
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    /// returns counters of a new call which is listed among recent calls until it is pushed out by later calls
+    static SplitStatistics start(String procedure) {
+        SplitStatistics statistics = new SplitStatistics(procedure);
+        RECENT_CALLS.addFirst(statistics);
+        while (RECENT_CALLS.size() > MAX_RECENT_CALLS) {
+            RECENT_CALLS.pollLast();
+        }
+        return statistics;
+    }
+
+    /// returns cumulative counters followed by counters of recent calls, the latest call first
+    static Stream<SplitStatsResult> results() {
+        List<SplitStatsResult> results = new ArrayList<>();
+        results.add(TOTAL.toResult("total"));
+        for (SplitStatistics call : RECENT_CALLS) {
+            results.add(call.toResult("call"));
+        }
+        return results.stream();
+    }
+
+    /// adds counters of the engine which finished its work, engines of failed transactions are not added
+    void add(SplitEngine engine) {
+        splitNodes.add(engine.getSplitNodes());
+        skippedNodes.add(engine.getSkippedNodes());
+        scannedRelationships.add(engine.getScannedRelationships());
+        locks.add(engine.getLockCount());
+        lockWaitNanos.add(engine.getLockWaitNanos());
+        createdNodes.add(engine.getCreatedNodes());
+        createdRelationships.add(engine.getCreatedRelationships());
+        copiedProperties.add(engine.getCopiedProperties());
+        for (SplitEngine.Phase phase : SplitEngine.Phase.values()) {
+            phaseNanos[phase.ordinal()].add(engine.getPhaseNanos(phase));
+        }
+    }
+
+    /// adds counters of the supernode split, windows are committed one by one, so counters of failed calls are added as well
+    void add(SupernodeSplitter splitter) {
+        splitNodes.add(splitter.isCompleted() ? 1 : 0);
+        scannedRelationships.add(splitter.getScannedRelationships());
+        locks.add(splitter.getLockCount());
+        lockWaitNanos.add(splitter.getLockWaitNanos());
+        createdNodes.add(splitter.getEntryNodes() + splitter.getExitNodes() + splitter.getJunctionNodes() + splitter.getPrototypeNodes());
+        createdRelationships.add(splitter.getCreatedRelationships());
+        copiedProperties.add(splitter.getCopiedProperties());
+        for (SplitEngine.Phase phase : SplitEngine.Phase.values()) {
+            phaseNanos[phase.ordinal()].add(splitter.getPhaseNanos(phase));
+        }
+    }
+
+    /// adds counters of the incremental split, which splits no source node
+    void add(IncrementalSplitter splitter) {
+        scannedRelationships.add(splitter.getScannedRelationships());
+        locks.add(splitter.getLockCount());
+        lockWaitNanos.add(splitter.getLockWaitNanos());
+        createdNodes.add(splitter.getCreatedEntryNodes() + splitter.getCreatedExitNodes());
+        createdRelationships.add(splitter.getCreatedRelationships());
+        copiedProperties.add(splitter.getCopiedProperties());
+    }
+
+    /// adds counters of the call to cumulative counters and writes them to the log if the call was slow
+    void finish(Log log, long slowCallMillis) {
+        if (!running)
+            return;
+        running = false;
+        calls.increment();
+        timeNanos.add(System.nanoTime() - startNanos);
+        TOTAL.add(this);
+        if (TimeUnit.NANOSECONDS.toMillis(timeNanos.sum()) >= slowCallMillis) {
+            SplitStatsResult result = toResult("call");
+            log.info("%s took %d ms: split %d nodes, scanned %d relationships, acquired %d locks in %d ms, created %d nodes and %d relationships, copied %d properties; " +
+                            "scan %d ms, create %d ms, link %d ms, repair %d ms, delete %d ms",
+                    procedure, result.timeMillis, result.splitNodes, result.scannedRelationships, result.locks, result.lockWaitMillis,
+                    result.createdNodes, result.createdRelationships, result.copiedProperties,
+                    result.scanMillis, result.createMillis, result.linkMillis, result.repairMillis, result.deleteMillis);
+        }
+    }
+
+    private void add(SplitStatistics call) {
+        calls.add(call.calls.sum());
+        splitNodes.add(call.splitNodes.sum());
+        skippedNodes.add(call.skippedNodes.sum());
+        scannedRelationships.add(call.scannedRelationships.sum());
+        locks.add(call.locks.sum());
+        lockWaitNanos.add(call.lockWaitNanos.sum());
+        createdNodes.add(call.createdNodes.sum());
+        createdRelationships.add(call.createdRelationships.sum());
+        copiedProperties.add(call.copiedProperties.sum());
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i].add(call.phaseNanos[i].sum());
+        }
+        timeNanos.add(call.timeNanos.sum());
+    }
+
+    private SplitStatsResult toResult(String scope) {
+        boolean running = this.running && this != TOTAL;
+        long time = running ? System.nanoTime() - startNanos : timeNanos.sum();
+        return new SplitStatsResult(scope, procedure, startedAt, running, calls.sum(), splitNodes.sum(), skippedNodes.sum(),
+                scannedRelationships.sum(), locks.sum(), millis(lockWaitNanos), createdNodes.sum(), createdRelationships.sum(), copiedProperties.sum(),
+                millis(phaseNanos[SplitEngine.Phase.SCAN.ordinal()]), millis(phaseNanos[SplitEngine.Phase.CREATE.ordinal()]),
+                millis(phaseNanos[SplitEngine.Phase.LINK.ordinal()]), millis(phaseNanos[SplitEngine.Phase.REPAIR.ordinal()]),
+                millis(phaseNanos[SplitEngine.Phase.DELETE.ordinal()]), TimeUnit.NANOSECONDS.toMillis(time));
+    }
+
+    private static long millis(LongAdder nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+    }
+}
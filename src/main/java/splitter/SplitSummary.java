@@ -0,0 +1,56 @@
+package splitter;
+
+import org.neo4j.graphdb.Node;
+import splitter.config.SplitNodeConfiguration;
+import splitter.results.SplitSummaryResult;
+
+/**
+ * Aggregates counters of a split engine over one source node or over all source nodes of a call.
+ * Created nodes are only counted, so they are never returned to the client.
+ */
+class SplitSummary {
+    private final SplitNodeConfiguration config;
+    private final Long sourceNode;
+    private long sourceNodes;
+    private long splitNodes;
+    private long entryNodes;
+    private long exitNodes;
+    private long junctionNodes;
+    private long createdRelationships;
+    //the largest count of indexed nodes created for one source node, indexes of each source node start from startIndex
+    private long maxIndexedNodes;
+
+    /// sourceNode is id of the summarized source node or null if the whole call is summarized
+    SplitSummary(SplitNodeConfiguration config, Long sourceNode) {
+        this.config = config;
+        this.sourceNode = sourceNode;
+    }
+
+    void split(SplitEngine splitter, Node node) {
+        long split = splitter.getSplitNodes();
+        long created = splitter.getCreatedNodes();
+        long entry = splitter.getEntryNodes();
+        long exit = splitter.getExitNodes();
+        long prototypes = splitter.getPrototypeNodes();
+        long relationships = splitter.getCreatedRelationships();
+
+        splitter.split(node);
+
+        sourceNodes++;
+        splitNodes += splitter.getSplitNodes() - split;
+        entry = splitter.getEntryNodes() - entry;
+        exit = splitter.getExitNodes() - exit;
+        entryNodes += entry;
+        exitNodes += exit;
+        junctionNodes += splitter.getCreatedNodes() - created - entry - exit - (splitter.getPrototypeNodes() - prototypes);
+        createdRelationships += splitter.getCreatedRelationships() - relationships;
+        maxIndexedNodes = Math.max(maxIndexedNodes, entry + exit);
+    }
+
+    SplitSummaryResult toResult() {
+        boolean indexed = config.getIndexPropertyName() != null && maxIndexedNodes > 0;
+        Long minIndex = indexed ? (long) config.getStartIndex() : null;
+        Long maxIndex = indexed ? config.getStartIndex() + maxIndexedNodes - 1 : null;
+        return new SplitSummaryResult(sourceNode, sourceNodes, splitNodes, entryNodes, exitNodes, junctionNodes, createdRelationships, minIndex, maxIndex);
+    }
+}
@@ -0,0 +1,543 @@
+package splitter;
+
+import org.neo4j.graphdb.*;
+import org.neo4j.helpers.collection.Iterables;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.RelationshipTraversalCursor;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import splitter.config.SplitNodeConfiguration;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Splits a single node with a large number of relationships in windows of windowSize relationships,
+ * each window is committed in its own top-level transaction on a separate thread.
+ * Progress is kept in the graph: every created entry and exit node is linked from the source node with a marker
+ * relationship, so a failed or interrupted split is resumed by calling the procedure again for the same node.
+ * A call commits at most maxWindows windows, so a long split can be spread over several calls.
+ * <ol>
+ * <li>relationships of split types are moved one by one to new entry and exit nodes (or through junction nodes),
+ * relationships of other types are copied to each new node</li>
+ * <li>entry nodes are linked to exit nodes, an entry node with more exit nodes than fit into a window is linked by several windows
+ * and its marker keeps the id of the last linked exit marker; the next window continues the relationship chain of the source node
+ * from that marker, so each window reads only the exit markers it links. The marker is deleted with the transaction which links the last exit node</li>
+ * <li>remaining relationships of the source node are deleted in windows, then the source node is deleted</li>
+ * </ol>
+ */
+class SupernodeSplitter {
+    private static final String ENTRY_MARKER = "__SplitEntry_";
+    private static final String EXIT_MARKER = "__SplitExit_";
+    private static final String JUNCTION_MARKER = "__SplitJunction_";
+    private static final RelationshipType PROTOTYPE_MARKER = RelationshipType.withName("__SplitPrototype");
+    //id of the last exit marker whose node is linked to the entry node of a marker
+    private static final String LINKED_EXIT_PROPERTY = "linkedExit";
+
+    private final GraphDatabaseService db;
+    private final SplitNodeConfiguration config;
+    private final NeighbourLocks locks;
+    private final ThreadToStatementContextBridge bridge;
+    //split types which have relationships to be linked in both directions, "non-greedy" types first
+    private final List<String> splitTypes = new ArrayList<>();
+    private long windows;
+    private long entryNodes;
+    private long exitNodes;
+    private long junctionNodes;
+    private long prototypeNodes;
+    private long createdRelationships;
+    private long deletedRelationships;
+    private long scannedRelationships;
+    private long copiedProperties;
+    private final long[] phaseNanos = new long[SplitEngine.Phase.values().length];
+    private boolean completed;
+
+    SupernodeSplitter(GraphDatabaseService db, SplitNodeConfiguration config) {
+        this.db = db;
+        this.config = config;
+        this.locks = new NeighbourLocks(db);
+        this.bridge = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+    }
+
+    /// splits the node on a separate thread and waits until it is split or a window fails
+    void split(long nodeId) {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BatchedSplitter.await(executor.submit(() -> splitNode(nodeId)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void splitNode(long nodeId) {
+        Label[] labels;
+        Map<String, Object> properties;
+        Map<String, Object> prototypeProperties = null;
+        List<RelationshipSnapshot> ignoredIncoming;
+        List<RelationshipSnapshot> ignoredOutgoing;
+        long start = System.nanoTime();
+        try (Transaction tx = db.beginTx()) {
+            Node node = db.getNodeById(nodeId);
+            //limits are checked before the first window, later calls continue the split which was allowed
+            if (!hasMarkers(node)) {
+                String reason = SplitPlan.of(node, config).exceededLimit();
+                if (reason != null)
+                    throw new RuntimeException("Node " + nodeId + " not split: " + reason);
+            }
+            findSplitTypes(node);
+            //labels, properties and relationships of other types are the same for all windows
+            labels = Iterables.asArray(Label.class, node.getLabels());
+            properties = node.getAllProperties();
+            if (config.isPrototypeProperties()) {
+                //split nodes get only kept properties, all properties are written once to the prototype node
+                prototypeProperties = properties;
+                properties = new HashMap<>(prototypeProperties);
+                properties.keySet().retainAll(config.getKeepProperties());
+            }
+            ignoredIncoming = ignoredRelationships(node, Direction.INCOMING);
+            ignoredOutgoing = ignoredRelationships(node, Direction.OUTGOING);
+            tx.success();
+        }
+        start = endPhase(SplitEngine.Phase.SCAN, start);
+
+        Map<String, Object> splitProperties = properties;
+        Map<String, Object> prototype = prototypeProperties;
+        if (!runWindows(SplitEngine.Phase.CREATE, () -> moveWindow(nodeId, labels, splitProperties, prototype, ignoredIncoming, ignoredOutgoing)))
+            return;
+        if (config.isJunctionTopology()) {
+            start = System.nanoTime();
+            linkJunctions(nodeId);
+            endPhase(SplitEngine.Phase.LINK, start);
+        } else {
+            for (String type : splitTypes) {
+                if (!runWindows(SplitEngine.Phase.LINK, () -> linkWindow(nodeId, type)))
+                    return;
+            }
+        }
+        completed = runWindows(SplitEngine.Phase.DELETE, () -> deleteWindow(nodeId));
+    }
+
+    /// commits windows of a phase until it is finished, returns false if maxWindows were committed before
+    private boolean runWindows(SplitEngine.Phase phase, BooleanSupplier window) {
+        long start = System.nanoTime();
+        try {
+            while (window.getAsBoolean()) {
+                windows++;
+                if (windows >= config.getMaxWindows())
+                    return false;
+            }
+            return true;
+        } finally {
+            endPhase(phase, start);
+        }
+    }
+
+    private long endPhase(SplitEngine.Phase phase, long start) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - start;
+        return now;
+    }
+
+    private static boolean hasMarkers(Node node) {
+        for (RelationshipType type : node.getRelationshipTypes()) {
+            if (isMarker(type.name()))
+                return true;
+        }
+        return false;
+    }
+
+    /// finds types which are split counting both relationships which are not moved yet and nodes which were already created.
+    /// Entry markers are deleted as entry nodes are linked, so a type with exit or junction markers was split by a previous call
+    /// even if its entry nodes are already linked
+    private void findSplitTypes(Node node) {
+        boolean nonGreedyExitNodes = false;
+        for (String type : config.getRelationshipTypes()) {
+            if (wasSplit(node, type) || (count(node, type, Direction.INCOMING, ENTRY_MARKER) > 0 && count(node, type, Direction.OUTGOING, EXIT_MARKER) > 0)) {
+                splitTypes.add(type);
+                nonGreedyExitNodes = true;
+            }
+        }
+        for (String type : config.getGreedyRelationshipTypes()) {
+            if (wasSplit(node, type) || (count(node, type, Direction.INCOMING, ENTRY_MARKER) > 0 && (nonGreedyExitNodes || count(node, type, Direction.OUTGOING, EXIT_MARKER) > 0)))
+                splitTypes.add(type);
+        }
+    }
+
+    private static boolean wasSplit(Node node, String type) {
+        return node.getDegree(RelationshipType.withName(EXIT_MARKER + type), Direction.OUTGOING) > 0
+                || node.getDegree(RelationshipType.withName(JUNCTION_MARKER + type), Direction.OUTGOING) > 0;
+    }
+
+    private static int count(Node node, String type, Direction direction, String marker) {
+        return node.getDegree(RelationshipType.withName(type), direction) + node.getDegree(RelationshipType.withName(marker + type), Direction.OUTGOING);
+    }
+
+    private List<RelationshipSnapshot> ignoredRelationships(Node node, Direction direction) {
+        List<RelationshipSnapshot> ignored = new ArrayList<>();
+        for (RelationshipType type : node.getRelationshipTypes()) {
+            String name = type.name();
+            if (config.getRelationshipTypes().contains(name) || config.getGreedyRelationshipTypes().contains(name) || isMarker(name))
+                continue;
+            for (Relationship relationship : node.getRelationships(direction, type)) {
+                ignored.add(RelationshipSnapshot.of(relationship, direction));
+            }
+        }
+        return ignored;
+    }
+
+    private static boolean isMarker(String type) {
+        return type.startsWith(ENTRY_MARKER) || type.startsWith(EXIT_MARKER) || type.startsWith(JUNCTION_MARKER) || type.equals(PROTOTYPE_MARKER.name());
+    }
+
+    /// moves the next window of relationships of split types to new nodes, returns false if nothing is left
+    private boolean moveWindow(long nodeId, Label[] labels, Map<String, Object> properties, Map<String, Object> prototypeProperties,
+                               List<RelationshipSnapshot> ignoredIncoming, List<RelationshipSnapshot> ignoredOutgoing) {
+        if (splitTypes.isEmpty())
+            return false;
+        RelationshipType[] types = new RelationshipType[splitTypes.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = RelationshipType.withName(splitTypes.get(i));
+        }
+        try (Transaction tx = db.beginTx()) {
+            Node node = db.getNodeById(nodeId);
+            List<Relationship> window = lockWindow(tx, node, () -> node.getRelationships(types));
+            if (window == null)
+                return true;
+            if (window.isEmpty())
+                return false;
+
+            //index continues after nodes created by previous windows and previous calls
+            int index = config.getStartIndex() + countMarkers(node, ENTRY_MARKER) + countMarkers(node, EXIT_MARKER);
+            Node prototype = prototypeProperties == null ? null : prototype(node, prototypeProperties);
+            for (Relationship relationship : window) {
+                boolean incoming = relationship.getEndNodeId() == nodeId;
+                Direction direction = incoming ? Direction.INCOMING : Direction.OUTGOING;
+                RelationshipSnapshot snapshot = RelationshipSnapshot.of(relationship, direction);
+                String type = relationship.getType().name();
+
+                Node splitNode = db.createNode(labels);
+                if (config.getIndexPropertyName() != null) { splitNode.setProperty(config.getIndexPropertyName(), index); }
+                index++;
+                properties.forEach(splitNode::setProperty);
+                copiedProperties += properties.size() + (config.getIndexPropertyName() != null ? 1 : 0);
+                if (prototype != null) {
+                    splitNode.createRelationshipTo(prototype, SplitEngine.PROTOTYPE_TYPE);
+                    createdRelationships++;
+                }
+                if (incoming) {
+                    createRelationship(snapshot.getOtherNode(), splitNode, snapshot);
+                    node.createRelationshipTo(splitNode, RelationshipType.withName(ENTRY_MARKER + type));
+                    entryNodes++;
+                } else {
+                    createRelationship(splitNode, snapshot.getOtherNode(), snapshot);
+                    node.createRelationshipTo(splitNode, RelationshipType.withName(EXIT_MARKER + type));
+                    exitNodes++;
+                }
+                if (config.isJunctionTopology()) {
+                    Node junction = junction(node, type);
+                    if (incoming)
+                        createRelationship(splitNode, junction, snapshot);
+                    else {
+                        junction.createRelationshipTo(splitNode, relationship.getType());
+                        createdRelationships++;
+                    }
+                }
+                for (RelationshipSnapshot ignored : ignoredIncoming) {
+                    createRelationship(ignored.getOtherNode(), splitNode, ignored);
+                }
+                for (RelationshipSnapshot ignored : ignoredOutgoing) {
+                    createRelationship(splitNode, ignored.getOtherNode(), ignored);
+                }
+                relationship.delete();
+                deletedRelationships++;
+            }
+            tx.success();
+            return true;
+        }
+    }
+
+    private int countMarkers(Node node, String marker) {
+        int count = 0;
+        for (String type : splitTypes) {
+            count += node.getDegree(RelationshipType.withName(marker + type), Direction.OUTGOING);
+        }
+        return count;
+    }
+
+    /// returns junction node of the type, creates it with the first window which needs it
+    private Node junction(Node node, String type) {
+        Node existing = findJunction(node, type);
+        if (existing != null)
+            return existing;
+        Node junction = db.createNode(SplitEngine.JUNCTION_LABEL);
+        junction.setProperty(SplitEngine.JUNCTION_TYPE_PROPERTY, type);
+        node.createRelationshipTo(junction, RelationshipType.withName(JUNCTION_MARKER + type));
+        junctionNodes++;
+        return junction;
+    }
+
+    private static Node findJunction(Node node, String type) {
+        for (Relationship relationship : node.getRelationships(Direction.OUTGOING, RelationshipType.withName(JUNCTION_MARKER + type))) {
+            return relationship.getEndNode();
+        }
+        return null;
+    }
+
+    /// returns prototype node of the source node, creates it with the first window
+    private Node prototype(Node node, Map<String, Object> properties) {
+        for (Relationship relationship : node.getRelationships(Direction.OUTGOING, PROTOTYPE_MARKER)) {
+            return relationship.getEndNode();
+        }
+        Node prototype = db.createNode(SplitEngine.PROTOTYPE_LABEL);
+        properties.forEach(prototype::setProperty);
+        copiedProperties += properties.size();
+        node.createRelationshipTo(prototype, PROTOTYPE_MARKER);
+        prototypeNodes++;
+        return prototype;
+    }
+
+    /// links the next window of entry nodes of the type to exit nodes, returns false if all entry nodes are linked
+    private boolean linkWindow(long nodeId, String type) {
+        try (Transaction tx = db.beginTx()) {
+            Node node = db.getNodeById(nodeId);
+            tx.acquireWriteLock(node);
+            RelationshipType relationshipType = RelationshipType.withName(type);
+            List<RelationshipType> exitMarkers = new ArrayList<>();
+            exitMarkers.add(RelationshipType.withName(EXIT_MARKER + type));
+            if (config.getGreedyRelationshipTypes().contains(type)) {
+                //"greedy" entry nodes are linked to exit nodes of "non-greedy" types as well
+                for (String nonGreedyType : splitTypes) {
+                    if (config.getRelationshipTypes().contains(nonGreedyType))
+                        exitMarkers.add(RelationshipType.withName(EXIT_MARKER + nonGreedyType));
+                }
+            }
+            KernelTransaction ktx = bridge.getKernelTransactionBoundToThisThread(true);
+            Read read = ktx.dataRead();
+            int[] exitMarkerIds = new int[exitMarkers.size()];
+            for (int i = 0; i < exitMarkerIds.length; i++) {
+                exitMarkerIds[i] = ktx.tokenRead().relationshipType(exitMarkers.get(i).name());
+            }
+
+            List<Relationship> entryMarkers = new ArrayList<>();
+            for (Relationship entryMarker : node.getRelationships(Direction.OUTGOING, RelationshipType.withName(ENTRY_MARKER + type))) {
+                if (entryMarkers.size() == config.getWindowSize())
+                    break;
+                entryMarkers.add(entryMarker);
+            }
+
+            long linked = 0;
+            boolean linkedEntries = false;
+            try (RelationshipTraversalCursor exits = ktx.cursors().allocateRelationshipTraversalCursor()) {
+                for (Relationship entryMarker : entryMarkers) {
+                    if (linked >= config.getWindowSize())
+                        break;
+                    linkedEntries = true;
+                    Node entryNode = entryMarker.getEndNode();
+                    RelationshipSnapshot entryRelationship = null;
+                    for (Relationship relationship : entryNode.getRelationships(Direction.INCOMING, relationshipType)) {
+                        entryRelationship = RelationshipSnapshot.of(relationship, Direction.INCOMING);
+                    }
+                    //exit markers are linked in the order of their chains, type by type
+                    long linkedExit = (long) entryMarker.getProperty(LINKED_EXIT_PROPERTY, -1L);
+                    int marker = linkedExit < 0 ? 0 : exitMarkerIndex(exitMarkers, linkedExit);
+                    long chainStart = linkedExit;
+                    boolean entryLinked = true;
+                    for (; entryRelationship != null && entryLinked && marker < exitMarkers.size(); marker++) {
+                        if (chainStart < 0)
+                            chainStart = firstRelationshipId(node, exitMarkers.get(marker));
+                        if (chainStart >= 0 && exitMarkerIds[marker] != TokenRead.NO_TOKEN) {
+                            //the chain of the source node is read from the marker, relationships of a node with few relationships
+                            //are kept in a single chain, so other types, directions and the last linked marker are skipped
+                            read.relationships(nodeId, chainStart, exits);
+                            while (exits.next()) {
+                                scannedRelationships++;
+                                if (exits.type() != exitMarkerIds[marker] || exits.sourceNodeReference() != nodeId
+                                        || exits.relationshipReference() == linkedExit)
+                                    continue;
+                                if (linked == config.getWindowSize()) {
+                                    //the window is full, the entry node is linked to the remaining exit nodes by the next window
+                                    entryMarker.setProperty(LINKED_EXIT_PROPERTY, linkedExit);
+                                    entryLinked = false;
+                                    break;
+                                }
+                                createRelationship(entryNode, db.getNodeById(exits.targetNodeReference()), entryRelationship);
+                                linkedExit = exits.relationshipReference();
+                                linked++;
+                            }
+                        }
+                        chainStart = -1;
+                    }
+                    //the marker is deleted with the transaction which links the last exit node, so no exit node is linked twice
+                    if (entryLinked)
+                        entryMarker.delete();
+                }
+            }
+            tx.success();
+            return linkedEntries;
+        }
+    }
+
+    /// returns position of the type of the exit marker in the list of linked exit marker types
+    private int exitMarkerIndex(List<RelationshipType> exitMarkers, long exitMarkerId) {
+        String name = db.getRelationshipById(exitMarkerId).getType().name();
+        for (int i = 0; i < exitMarkers.size(); i++) {
+            if (exitMarkers.get(i).name().equals(name))
+                return i;
+        }
+        throw new RuntimeException("Exit marker " + exitMarkerId + " has unexpected type " + name);
+    }
+
+    /// returns id of the first relationship in the chain of the type or -1 if there is none
+    private static long firstRelationshipId(Node node, RelationshipType type) {
+        for (Relationship relationship : node.getRelationships(Direction.OUTGOING, type)) {
+            return relationship.getId();
+        }
+        return -1;
+    }
+
+    /// links junction nodes of "greedy" types to junction nodes of "non-greedy" types which they are not linked to yet
+    private void linkJunctions(long nodeId) {
+        try (Transaction tx = db.beginTx()) {
+            Node node = db.getNodeById(nodeId);
+            tx.acquireWriteLock(node);
+            for (String greedyType : splitTypes) {
+                if (!config.getGreedyRelationshipTypes().contains(greedyType))
+                    continue;
+                RelationshipType type = RelationshipType.withName(greedyType);
+                Node greedyJunction = findJunction(node, greedyType);
+                for (String nonGreedyType : splitTypes) {
+                    if (!config.getRelationshipTypes().contains(nonGreedyType))
+                        continue;
+                    Node junction = findJunction(node, nonGreedyType);
+                    //a junction without marker was deleted with the source node relationships by a previous call
+                    if (greedyJunction == null || junction == null)
+                        continue;
+                    boolean exists = false;
+                    for (Relationship relationship : junction.getRelationships(Direction.INCOMING, type)) {
+                        exists |= relationship.getStartNode().equals(greedyJunction);
+                    }
+                    if (!exists) {
+                        greedyJunction.createRelationshipTo(junction, type);
+                        createdRelationships++;
+                    }
+                }
+            }
+            tx.success();
+        }
+    }
+
+    /// deletes the next window of remaining relationships of the source node and the node itself when none are left,
+    /// returns false if the node is deleted
+    private boolean deleteWindow(long nodeId) {
+        try (Transaction tx = db.beginTx()) {
+            Node node = db.getNodeById(nodeId);
+            List<Relationship> window = lockWindow(tx, node, node::getRelationships);
+            if (window == null)
+                return true;
+            for (Relationship relationship : window) {
+                if (!isMarker(relationship.getType().name()))
+                    deletedRelationships++;
+                relationship.delete();
+            }
+            if (window.isEmpty())
+                node.delete();
+            tx.success();
+            return !window.isEmpty();
+        }
+    }
+
+    /// reads the next window of relationships, locks the source node and their other nodes in ascending id order
+    /// and reads the window again, so relationships which were changed before the locks were taken are not used.
+    /// Returns null if relationships are left, but none of them has a locked neighbour, the next window reads them again
+    private List<Relationship> lockWindow(Transaction tx, Node node, Supplier<Iterable<Relationship>> relationships) {
+        long nodeId = node.getId();
+        long[] neighbourIds = new long[config.getWindowSize()];
+        int count = 0;
+        for (Relationship relationship : relationships.get()) {
+            if (count == neighbourIds.length)
+                break;
+            neighbourIds[count++] = relationship.getOtherNodeId(nodeId);
+        }
+        long[] sortedIds = Arrays.copyOf(neighbourIds, count);
+        Arrays.sort(sortedIds);
+        locks.acquire(tx, node, sortedIds);
+
+        List<Relationship> window = new ArrayList<>();
+        boolean skipped = false;
+        for (Relationship relationship : relationships.get()) {
+            if (window.size() == config.getWindowSize())
+                break;
+            if (Arrays.binarySearch(sortedIds, relationship.getOtherNodeId(nodeId)) >= 0)
+                window.add(relationship);
+            else
+                skipped = true;
+        }
+        scannedRelationships += window.size();
+        return window.isEmpty() && skipped ? null : window;
+    }
+
+    private void createRelationship(Node from, Node to, RelationshipSnapshot source) {
+        Relationship relationship = from.createRelationshipTo(to, source.getType());
+        createdRelationships++;
+        source.getProperties().applyTo(relationship);
+        copiedProperties += source.getProperties().size();
+    }
+
+    long getWindows() {
+        return windows;
+    }
+
+    long getEntryNodes() {
+        return entryNodes;
+    }
+
+    long getExitNodes() {
+        return exitNodes;
+    }
+
+    long getJunctionNodes() {
+        return junctionNodes;
+    }
+
+    long getPrototypeNodes() {
+        return prototypeNodes;
+    }
+
+    long getCreatedRelationships() {
+        return createdRelationships;
+    }
+
+    long getDeletedRelationships() {
+        return deletedRelationships;
+    }
+
+    long getScannedRelationships() {
+        return scannedRelationships;
+    }
+
+    long getCopiedProperties() {
+        return copiedProperties;
+    }
+
+    long getLockCount() {
+        return locks.getCount();
+    }
+
+    long getLockWaitNanos() {
+        return locks.getWaitNanos();
+    }
+
+    long getPhaseNanos(SplitEngine.Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /// true if the source node was deleted, false if the call stopped after maxWindows windows
+    boolean isCompleted() {
+        return completed;
+    }
+}
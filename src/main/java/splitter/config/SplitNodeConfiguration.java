@@ -7,12 +7,48 @@ public class SplitNodeConfiguration {
     private static final String INDEX_PROPERTY_NAME = "indexProperty";
     private static final String RELATIONSHIP_TYPES = "relationshipTypes";
     private static final String GREEDY_RELATIONSHIP_TYPES = "greedyRelationshipTypes";
+    private static final String BATCH_SIZE = "batchSize";
+    private static final String WINDOW_SIZE = "windowSize";
+    private static final String MAX_WINDOWS = "maxWindows";
+    private static final String PARALLELISM = "parallelism";
+    private static final String ENGINE = "engine";
+    private static final String TOPOLOGY = "topology";
+    private static final String MAX_CREATED_RELATIONSHIPS = "maxCreatedRelationships";
+    private static final String MAX_FAN_OUT = "maxFanOut";
+    private static final String SUMMARY = "summary";
+    private static final String SLOW_CALL_MILLIS = "slowCallMillis";
+    private static final String PROPERTIES = "properties";
+    private static final String KEEP_PROPERTIES = "keepProperties";
+    private static final String FILTER_PROPERTY = "filterProperty";
+    private static final String FILTER_VALUE = "filterValue";
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_WINDOW_SIZE = 10000;
+    private static final long DEFAULT_SLOW_CALL_MILLIS = 1000;
+    private static final List<String> ENGINES = Arrays.asList("core", "kernel");
+    private static final List<String> TOPOLOGIES = Arrays.asList("cartesian", "junction");
+    private static final List<String> SUMMARIES = Arrays.asList("source", "call");
+    private static final List<String> PROPERTY_MODES = Arrays.asList("copy", "prototype");
 
 
     private final String indexPropertyName;
     private int startIndex;
     private HashSet<String> relationshipTypes;
     private HashSet<String> greedyRelationshipTypes;
+    private int batchSize;
+    private int windowSize;
+    private int maxWindows;
+    private int parallelism;
+    private String engine;
+    private String topology;
+    private long maxCreatedRelationships;
+    private long maxFanOut;
+    private String summary;
+    private long slowCallMillis;
+    private String properties;
+    private HashSet<String> keepProperties;
+    private final String filterPropertyName;
+    private final Object filterValue;
 
     public static SplitNodeConfiguration build(Map<String,Object> configuration) {
         return new SplitNodeConfiguration(configuration);
@@ -23,8 +59,36 @@ public class SplitNodeConfiguration {
         this.indexPropertyName = indexPropertyName == null ? null : indexPropertyName.toString();
 
         parseStartIndex(configuration);
-        relationshipTypes = parseRelationshipTypes(configuration, RELATIONSHIP_TYPES);
-        greedyRelationshipTypes = parseRelationshipTypes(configuration, GREEDY_RELATIONSHIP_TYPES);
+        relationshipTypes = parseNames(configuration, RELATIONSHIP_TYPES);
+        greedyRelationshipTypes = parseNames(configuration, GREEDY_RELATIONSHIP_TYPES);
+        batchSize = parsePositiveInteger(configuration, BATCH_SIZE, DEFAULT_BATCH_SIZE);
+        windowSize = parsePositiveInteger(configuration, WINDOW_SIZE, DEFAULT_WINDOW_SIZE);
+        maxWindows = parsePositiveInteger(configuration, MAX_WINDOWS, Integer.MAX_VALUE);
+        parallelism = parsePositiveInteger(configuration, PARALLELISM, Runtime.getRuntime().availableProcessors());
+        engine = parseOption(configuration, ENGINE, ENGINES);
+        //core engine splits a type from both lists once as "non-greedy" and once as "greedy",
+        //kernel engine keeps a single bucket per type token and can not do the same
+        if (engine.equals("kernel")) {
+            Set<String> overlapping = new TreeSet<>(relationshipTypes);
+            overlapping.retainAll(greedyRelationshipTypes);
+            if (!overlapping.isEmpty()) {
+                throw new RuntimeException(RELATIONSHIP_TYPES + " and " + GREEDY_RELATIONSHIP_TYPES + " should not both contain " + overlapping + " with kernel engine");
+            }
+        }
+        topology = parseOption(configuration, TOPOLOGY, TOPOLOGIES);
+        maxCreatedRelationships = parsePositiveLong(configuration, MAX_CREATED_RELATIONSHIPS, Long.MAX_VALUE);
+        maxFanOut = parsePositiveLong(configuration, MAX_FAN_OUT, Long.MAX_VALUE);
+        summary = parseOption(configuration, SUMMARY, SUMMARIES);
+        slowCallMillis = parsePositiveLong(configuration, SLOW_CALL_MILLIS, DEFAULT_SLOW_CALL_MILLIS);
+        properties = parseOption(configuration, PROPERTIES, PROPERTY_MODES);
+        keepProperties = parseNames(configuration, KEEP_PROPERTIES);
+
+        Object filterPropertyName = configuration.get(FILTER_PROPERTY);
+        this.filterPropertyName = filterPropertyName == null ? null : filterPropertyName.toString();
+        this.filterValue = configuration.get(FILTER_VALUE);
+        if (this.filterPropertyName != null && this.filterValue == null) {
+            throw new RuntimeException(FILTER_VALUE + " should be set with " + FILTER_PROPERTY);
+        }
     }
 
     public String getIndexPropertyName() {
@@ -43,6 +107,76 @@ public class SplitNodeConfiguration {
         return this.greedyRelationshipTypes;
     }
 
+    /// count of source nodes split in one transaction by batched procedures
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /// count of relationships of a supernode moved, linked or deleted in one transaction
+    public int getWindowSize() {
+        return this.windowSize;
+    }
+
+    /// count of windows committed by one call of supernode splitting, Integer.MAX_VALUE if not limited
+    public int getMaxWindows() {
+        return this.maxWindows;
+    }
+
+    /// count of worker threads used by parallel procedures
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /// "core" (default) or "kernel"
+    public String getEngine() {
+        return this.engine;
+    }
+
+    /// true if entry and exit nodes are linked through a junction node instead of linking each pair
+    public boolean isJunctionTopology() {
+        return "junction".equals(this.topology);
+    }
+
+    /// nodes which would create more relationships are skipped, Long.MAX_VALUE if not limited
+    public long getMaxCreatedRelationships() {
+        return this.maxCreatedRelationships;
+    }
+
+    /// nodes which would create a node with more relationships are skipped, Long.MAX_VALUE if not limited
+    public long getMaxFanOut() {
+        return this.maxFanOut;
+    }
+
+    /// true if summary procedures return one row for the whole call instead of one row for each source node
+    public boolean isCallSummary() {
+        return "call".equals(this.summary);
+    }
+
+    /// counters of calls which take longer are written to the debug log
+    public long getSlowCallMillis() {
+        return this.slowCallMillis;
+    }
+
+    /// true if properties of the source node are written once to a prototype node which split nodes are linked to,
+    /// instead of copying them to each split node
+    public boolean isPrototypeProperties() {
+        return "prototype".equals(this.properties);
+    }
+
+    /// properties which split nodes keep in prototype mode in addition to the index property
+    public Set<String> getKeepProperties() {
+        return this.keepProperties;
+    }
+
+    /// name of property which source nodes found by label should have, null if all nodes with label are split
+    public String getFilterPropertyName() {
+        return this.filterPropertyName;
+    }
+
+    public Object getFilterValue() {
+        return this.filterValue;
+    }
+
     private void parseStartIndex(Map<String,Object> configuration) throws RuntimeException {
         Object startIndex = configuration.get(START_INDEX);
         if (startIndex != null) {
@@ -56,7 +190,57 @@ public class SplitNodeConfiguration {
         }
     }
 
-    private HashSet<String> parseRelationshipTypes(Map<String,Object> configuration, String parameterName) throws RuntimeException {
+    private int parsePositiveInteger(Map<String,Object> configuration, String parameterName, int defaultValue) throws RuntimeException {
+        Object value = configuration.get(parameterName);
+        if (value == null) {
+            return defaultValue;
+        }
+        int result;
+        try {
+            result = Integer.parseInt(value.toString());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new RuntimeException("Unable to parse " + parameterName + " value");
+        }
+        if (result <= 0) {
+            throw new RuntimeException(parameterName + " should be greater than 0");
+        }
+        return result;
+    }
+
+    private long parsePositiveLong(Map<String,Object> configuration, String parameterName, long defaultValue) throws RuntimeException {
+        Object value = configuration.get(parameterName);
+        if (value == null) {
+            return defaultValue;
+        }
+        long result;
+        try {
+            result = Long.parseLong(value.toString());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new RuntimeException("Unable to parse " + parameterName + " value");
+        }
+        if (result <= 0) {
+            throw new RuntimeException(parameterName + " should be greater than 0");
+        }
+        return result;
+    }
+
+    /// returns value of the parameter or the first option if parameter is not set
+    private String parseOption(Map<String,Object> configuration, String parameterName, List<String> options) throws RuntimeException {
+        Object value = configuration.get(parameterName);
+        if (value == null) {
+            return options.get(0);
+        }
+        if (!options.contains(value.toString())) {
+            throw new RuntimeException("Unable to parse " + parameterName + " value, expected one of " + options);
+        }
+        return value.toString();
+    }
+
+    private HashSet<String> parseNames(Map<String,Object> configuration, String parameterName) throws RuntimeException {
         Object relationshipTypesValue = configuration.get(parameterName);
         if (relationshipTypesValue == null) {
             return new HashSet<>(0);
@@ -0,0 +1,453 @@
+package splitter.offline;
+
+import splitter.config.SplitNodeConfiguration;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Command-line tool which splits nodes in CSV files of neo4j-admin import before they are imported,
+ * applying the same rules as splitter.splitNodes with cartesian topology.
+ * <p>
+ * Files are streamed and all intermediate data is sorted externally, so only one chunk of records
+ * and relationships of one source node are kept in memory:
+ * 1. nodes with the split label are sorted by id, other nodes are written as is,
+ *    ids which may be taken by created nodes (source id, separator and a number) are sorted by their source id
+ * 2. both ends of each relationship are sorted by node id and merged with the sorted source nodes,
+ *    created nodes and links between them are written, new ends of relationships are sorted by relationship number,
+ *    the split fails if an existing node has the id of a created node
+ * 3. relationships are read again and written with their new ends
+ */
+public class CsvSplitter {
+    private static final String USAGE = "Usage: java -cp node-splitter.jar splitter.offline.CsvSplitter --nodes nodes.csv --relationships relationships.csv"
+            + " --output directory --label Label --relationshipTypes Type1,Type2 [--greedyRelationshipTypes Type3,Type4]"
+            + " [--indexProperty Index --startIndex 0] [--idSeparator _] [--sortBuffer 1000000] [--tmp directory]";
+    private static final int DEFAULT_SORT_BUFFER = 1000000;
+    private static final String DEFAULT_ID_SEPARATOR = "_";
+    private static final String INCOMING = "I";
+    private static final String OUTGOING = "O";
+    private static final String START = "S";
+    private static final String END = "E";
+
+    private final SplitNodeConfiguration config;
+    private final Path nodesFile;
+    private final Path relationshipsFile;
+    private final Path outputDirectory;
+    private final Path tmpDirectory;
+    private final String label;
+    private final String idSeparator;
+    private final int sortBuffer;
+
+    private String[] nodesHeader;
+    private int nodeIdColumn;
+    private int indexColumn = -1;
+    private int startColumn;
+    private int endColumn;
+    private int typeColumn;
+
+    private long splitNodes;
+    private long createdNodes;
+    private long createdRelationships;
+    private long writtenRelationships;
+
+    public CsvSplitter(Map<String, String> options) {
+        Map<String, Object> configuration = new HashMap<>(options);
+        for (String parameterName : Arrays.asList("relationshipTypes", "greedyRelationshipTypes")) {
+            String types = options.get(parameterName);
+            if (types != null)
+                configuration.put(parameterName, new ArrayList<>(Arrays.asList(types.split(","))));
+        }
+        config = SplitNodeConfiguration.build(configuration);
+        if (config.isJunctionTopology())
+            throw new RuntimeException("junction topology is not supported by offline splitting");
+        if (config.isPrototypeProperties())
+            throw new RuntimeException("prototype properties are not supported by offline splitting");
+
+        nodesFile = Paths.get(required(options, "nodes"));
+        relationshipsFile = Paths.get(required(options, "relationships"));
+        outputDirectory = Paths.get(required(options, "output"));
+        tmpDirectory = Paths.get(options.getOrDefault("tmp", options.get("output")));
+        label = required(options, "label");
+        idSeparator = options.getOrDefault("idSeparator", DEFAULT_ID_SEPARATOR);
+        if (idSeparator.isEmpty())
+            throw new RuntimeException("idSeparator should not be empty");
+        String sortBuffer = options.get("sortBuffer");
+        try {
+            this.sortBuffer = sortBuffer == null ? DEFAULT_SORT_BUFFER : Integer.parseInt(sortBuffer);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Unable to parse sortBuffer value");
+        }
+        if (this.sortBuffer <= 0)
+            throw new RuntimeException("sortBuffer should be greater than 0");
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                System.err.println(USAGE);
+                System.exit(1);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        CsvSplitter splitter;
+        try {
+            splitter = new CsvSplitter(options);
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            splitter.split();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Split failed: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.printf("Split %d nodes into %d nodes with %d links, wrote %d relationships in %d ms%n", splitter.getSplitNodes(),
+                splitter.getCreatedNodes(), splitter.getCreatedRelationships(), splitter.getWrittenRelationships(), System.currentTimeMillis() - start);
+    }
+
+    /// writes nodes.csv and relationships.csv with the same headers as input files into the output directory
+    public void split() throws IOException {
+        Files.createDirectories(outputDirectory);
+        Files.createDirectories(tmpDirectory);
+        Path tmp = Files.createTempDirectory(tmpDirectory, "split");
+        try (ExternalSorter sourceNodes = new ExternalSorter(tmp, sortBuffer, Comparator.comparing(record -> record[0]));
+             ExternalSorter takenIds = new ExternalSorter(tmp, sortBuffer, Comparator.comparing(record -> record[0]));
+             ExternalSorter halfEdges = new ExternalSorter(tmp, sortBuffer, Comparator.<String[], String>comparing(record -> record[0])
+                     .thenComparingLong(record -> Long.parseLong(record[1])).thenComparing(record -> record[2]));
+             ExternalSorter ends = new ExternalSorter(tmp, sortBuffer, Comparator.<String[]>comparingLong(record -> Long.parseLong(record[0]))
+                     .thenComparing(record -> record[1]));
+             BufferedWriter nodesOutput = Files.newBufferedWriter(outputDirectory.resolve("nodes.csv"), StandardCharsets.UTF_8);
+             BufferedWriter relationshipsOutput = Files.newBufferedWriter(outputDirectory.resolve("relationships.csv"), StandardCharsets.UTF_8)) {
+            readNodes(nodesOutput, sourceNodes, takenIds);
+            readRelationships(relationshipsOutput, halfEdges);
+            splitSourceNodes(sourceNodes.sorted(), takenIds.sorted(), halfEdges.sorted(), nodesOutput, relationshipsOutput, ends);
+            writeRelationships(ends.sorted(), relationshipsOutput);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void readNodes(BufferedWriter output, ExternalSorter sourceNodes, ExternalSorter takenIds) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(nodesFile, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null)
+                throw new RuntimeException(nodesFile + " is empty");
+            String[] header = Csv.parse(line);
+            nodeIdColumn = findColumn(header, ":ID", nodesFile);
+            int labelColumn = findColumn(header, ":LABEL", nodesFile);
+            nodesHeader = header;
+            String indexProperty = config.getIndexPropertyName();
+            if (indexProperty != null) {
+                for (int i = 0; i < header.length; i++) {
+                    if (header[i].split(":")[0].equals(indexProperty))
+                        indexColumn = i;
+                }
+                if (indexColumn < 0) {
+                    //index property is added as the last column, nodes which are not split leave it empty
+                    nodesHeader = Arrays.copyOf(header, header.length + 1);
+                    indexColumn = header.length;
+                    nodesHeader[indexColumn] = indexProperty + ":int";
+                }
+            }
+            writeLine(output, nodesHeader);
+
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                String[] row = Arrays.copyOf(Csv.parse(line), nodesHeader.length);
+                addTakenId(row[nodeIdColumn], takenIds);
+                if (Arrays.asList(row[labelColumn].split(";")).contains(label)) {
+                    String[] record = new String[row.length + 1];
+                    record[0] = row[nodeIdColumn];
+                    System.arraycopy(row, 0, record, 1, row.length);
+                    sourceNodes.add(record);
+                } else {
+                    writeLine(output, row);
+                }
+            }
+        }
+    }
+
+    /// adds records of source id and number of an id which has the form of a created node id
+    private void addTakenId(String id, ExternalSorter takenIds) {
+        int separator = id.lastIndexOf(idSeparator);
+        if (separator <= 0)
+            return;
+        String number = id.substring(separator + idSeparator.length());
+        //only canonical numbers are generated, "1_01" can not collide
+        if (number.isEmpty() || number.length() > 9 || !number.chars().allMatch(Character::isDigit)
+                || (number.length() > 1 && number.charAt(0) == '0'))
+            return;
+        takenIds.add(new String[]{id.substring(0, separator), number, id});
+    }
+
+    /// adds both ends of each relationship as records of its node id, relationship number, direction and row
+    private void readRelationships(BufferedWriter output, ExternalSorter halfEdges) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(relationshipsFile, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null)
+                throw new RuntimeException(relationshipsFile + " is empty");
+            String[] header = Csv.parse(line);
+            startColumn = findColumn(header, ":START_ID", relationshipsFile);
+            endColumn = findColumn(header, ":END_ID", relationshipsFile);
+            typeColumn = findColumn(header, ":TYPE", relationshipsFile);
+            writeLine(output, header);
+
+            long number = 0;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                String[] row = Csv.parse(line);
+                halfEdges.add(halfEdge(row[startColumn], number, OUTGOING, row));
+                halfEdges.add(halfEdge(row[endColumn], number, INCOMING, row));
+                number++;
+            }
+        }
+    }
+
+    private static String[] halfEdge(String nodeId, long number, String direction, String[] row) {
+        String[] record = new String[row.length + 3];
+        record[0] = nodeId;
+        record[1] = Long.toString(number);
+        record[2] = direction;
+        System.arraycopy(row, 0, record, 3, row.length);
+        return record;
+    }
+
+    private void splitSourceNodes(Iterator<String[]> sourceNodes, Iterator<String[]> takenIds, Iterator<String[]> halfEdges,
+                                  BufferedWriter nodesOutput, BufferedWriter relationshipsOutput, ExternalSorter ends) throws IOException {
+        String[] halfEdge = halfEdges.hasNext() ? halfEdges.next() : null;
+        String[] takenId = takenIds.hasNext() ? takenIds.next() : null;
+        while (sourceNodes.hasNext()) {
+            String[] sourceNode = sourceNodes.next();
+            String id = sourceNode[0];
+            //ids of nodes which are not split can not collide with created ids
+            while (takenId != null && takenId[0].compareTo(id) < 0) {
+                takenId = takenIds.hasNext() ? takenIds.next() : null;
+            }
+            //ends of relationships of nodes which are not split are skipped
+            while (halfEdge != null && halfEdge[0].compareTo(id) < 0) {
+                halfEdge = halfEdges.hasNext() ? halfEdges.next() : null;
+            }
+            SourceNode node = new SourceNode(Arrays.copyOfRange(sourceNode, 1, sourceNode.length));
+            while (halfEdge != null && halfEdge[0].equals(id)) {
+                node.add(halfEdge);
+                halfEdge = halfEdges.hasNext() ? halfEdges.next() : null;
+            }
+            node.split(nodesOutput, relationshipsOutput, ends);
+            while (takenId != null && takenId[0].equals(id)) {
+                if (Integer.parseInt(takenId[1]) < node.createdIds.size())
+                    throw new RuntimeException("Node " + takenId[2] + " has the id of a node created by splitting node " + id
+                            + ", use another idSeparator");
+                takenId = takenIds.hasNext() ? takenIds.next() : null;
+            }
+        }
+    }
+
+    /// writes each relationship with its new ends, relationships of split nodes without new ends are dropped
+    private void writeRelationships(Iterator<String[]> ends, BufferedWriter output) throws IOException {
+        String[] end = ends.hasNext() ? ends.next() : null;
+        try (BufferedReader reader = Files.newBufferedReader(relationshipsFile, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            long number = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                String[] row = Csv.parse(line);
+                List<String> starts = null;
+                List<String> endIds = null;
+                while (end != null && Long.parseLong(end[0]) == number) {
+                    List<String> ids;
+                    if (START.equals(end[1])) {
+                        ids = starts == null ? (starts = new ArrayList<>()) : starts;
+                    } else {
+                        ids = endIds == null ? (endIds = new ArrayList<>()) : endIds;
+                    }
+                    if (!end[2].isEmpty())
+                        ids.add(end[2]);
+                    end = ends.hasNext() ? ends.next() : null;
+                }
+                number++;
+                if (starts == null)
+                    starts = Collections.singletonList(row[startColumn]);
+                if (endIds == null)
+                    endIds = Collections.singletonList(row[endColumn]);
+                for (String start : starts) {
+                    for (String endId : endIds) {
+                        writeRelationship(output, row, start, endId);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeRelationship(BufferedWriter output, String[] row, String start, String end) throws IOException {
+        String[] copy = row.clone();
+        copy[startColumn] = start;
+        copy[endColumn] = end;
+        writeLine(output, copy);
+        writtenRelationships++;
+    }
+
+    private static int findColumn(String[] header, String type, Path file) {
+        for (int i = 0; i < header.length; i++) {
+            //columns may have a name and an id space, e.g. "personId:ID(Person)"
+            int separator = header[i].indexOf(':');
+            if (separator >= 0 && header[i].substring(separator).startsWith(type))
+                return i;
+        }
+        throw new RuntimeException(file + " has no " + type + " column");
+    }
+
+    private static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null)
+            throw new RuntimeException(name + " should be set");
+        return value;
+    }
+
+    private static void writeLine(BufferedWriter output, String[] fields) throws IOException {
+        output.write(Csv.format(fields));
+        output.newLine();
+    }
+
+    public long getSplitNodes() {
+        return splitNodes;
+    }
+
+    public long getCreatedNodes() {
+        return createdNodes;
+    }
+
+    /// count of links between created nodes
+    public long getCreatedRelationships() {
+        return createdRelationships;
+    }
+
+    /// count of relationships of the input file written with their (new) ends
+    public long getWrittenRelationships() {
+        return writtenRelationships;
+    }
+
+    /**
+     * Relationships of one source node sorted by type and direction, like RelationshipBuckets of the procedure.
+     */
+    private final class SourceNode {
+        private final String[] row;
+        private final Map<String, List<String[]>> incoming = new HashMap<>();
+        private final Map<String, List<String[]>> outgoing = new HashMap<>();
+        private final List<String[]> ignored = new ArrayList<>();
+        private final List<String[]> dropped = new ArrayList<>();
+        private final List<String> createdIds = new ArrayList<>();
+        private int index = config.getStartIndex();
+
+        SourceNode(String[] row) {
+            this.row = row;
+        }
+
+        void add(String[] halfEdge) {
+            String type = halfEdge[3 + typeColumn];
+            if (!config.getRelationshipTypes().contains(type) && !config.getGreedyRelationshipTypes().contains(type)) {
+                ignored.add(halfEdge);
+                return;
+            }
+            Map<String, List<String[]>> buckets = INCOMING.equals(halfEdge[2]) ? incoming : outgoing;
+            buckets.computeIfAbsent(type, key -> new ArrayList<>()).add(halfEdge);
+        }
+
+        void split(BufferedWriter nodesOutput, BufferedWriter relationshipsOutput, ExternalSorter ends) throws IOException {
+            List<String> nonGreedyExitIds = new ArrayList<>();
+            for (String type : config.getRelationshipTypes()) {
+                createNodes(type, Collections.emptyList(), nodesOutput, relationshipsOutput, ends, nonGreedyExitIds);
+            }
+            List<String> exitIdsForGreedy = new ArrayList<>(nonGreedyExitIds);
+            for (String type : config.getGreedyRelationshipTypes()) {
+                createNodes(type, exitIdsForGreedy, nodesOutput, relationshipsOutput, ends, new ArrayList<>());
+            }
+
+            //if no nodes were created the source node is left alone
+            if (createdIds.isEmpty()) {
+                writeLine(nodesOutput, row);
+                return;
+            }
+            splitNodes++;
+            createdNodes += createdIds.size();
+            //relationships of split types without created nodes are deleted with the source node
+            for (String[] halfEdge : dropped) {
+                ends.add(end(halfEdge, ""));
+            }
+            //relationships of other types are copied to each created node
+            for (String[] halfEdge : ignored) {
+                for (String createdId : createdIds) {
+                    ends.add(end(halfEdge, createdId));
+                }
+            }
+        }
+
+        private void createNodes(String type, List<String> nonGreedyExitIds, BufferedWriter nodesOutput, BufferedWriter relationshipsOutput,
+                                 ExternalSorter ends, List<String> resultExitIds) throws IOException {
+            List<String[]> in = incoming.getOrDefault(type, Collections.emptyList());
+            List<String[]> out = outgoing.getOrDefault(type, Collections.emptyList());
+            if (in.isEmpty() || (out.isEmpty() && nonGreedyExitIds.isEmpty())) {
+                dropped.addAll(in);
+                dropped.addAll(out);
+                return;
+            }
+            List<String> entryIds = createNodes(in, nodesOutput, ends);
+            List<String> exitIds = createNodes(out, nodesOutput, ends);
+            for (int i = 0; i < entryIds.size(); i++) {
+                String[] relationship = Arrays.copyOfRange(in.get(i), 3, in.get(i).length);
+                for (String exitId : exitIds) {
+                    writeLine(relationshipsOutput, link(relationship, entryIds.get(i), exitId));
+                }
+                //"greedy" entry nodes are also linked to "non-greedy" exit nodes
+                for (String exitId : nonGreedyExitIds) {
+                    writeLine(relationshipsOutput, link(relationship, entryIds.get(i), exitId));
+                }
+            }
+            resultExitIds.addAll(exitIds);
+        }
+
+        /// creates a node for each relationship, the relationship gets the node as its new end
+        private List<String> createNodes(List<String[]> halfEdges, BufferedWriter nodesOutput, ExternalSorter ends) throws IOException {
+            List<String> ids = new ArrayList<>(halfEdges.size());
+            for (String[] halfEdge : halfEdges) {
+                String[] node = row.clone();
+                String id = row[nodeIdColumn] + idSeparator + createdIds.size();
+                node[nodeIdColumn] = id;
+                if (indexColumn >= 0)
+                    node[indexColumn] = Integer.toString(index);
+                index++;
+                writeLine(nodesOutput, node);
+                createdIds.add(id);
+                ids.add(id);
+                ends.add(end(halfEdge, id));
+            }
+            return ids;
+        }
+
+        private String[] link(String[] relationship, String from, String to) {
+            String[] link = relationship.clone();
+            link[startColumn] = from;
+            link[endColumn] = to;
+            createdRelationships++;
+            return link;
+        }
+
+        /// new end of a relationship, empty id if the relationship is dropped
+        private String[] end(String[] halfEdge, String id) {
+            return new String[]{halfEdge[1], OUTGOING.equals(halfEdge[2]) ? START : END, id};
+        }
+    }
+}
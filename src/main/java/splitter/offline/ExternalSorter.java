@@ -0,0 +1,116 @@
+package splitter.offline;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Sorts records which do not fit in memory: records are collected into chunks of bufferSize records,
+ * each chunk is sorted and spilled to a temporary file, sorted files are merged when records are read.
+ */
+class ExternalSorter implements Closeable {
+    private final Path directory;
+    private final int bufferSize;
+    private final Comparator<String[]> comparator;
+    private final List<String[]> buffer = new ArrayList<>();
+    private final List<Path> chunks = new ArrayList<>();
+    private final List<BufferedReader> readers = new ArrayList<>();
+
+    ExternalSorter(Path directory, int bufferSize, Comparator<String[]> comparator) {
+        this.directory = directory;
+        this.bufferSize = bufferSize;
+        this.comparator = comparator;
+    }
+
+    void add(String[] record) throws IOException {
+        buffer.add(record);
+        if (buffer.size() == bufferSize)
+            spill();
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(comparator);
+        Path chunk = Files.createTempFile(directory, "sort", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(chunk, StandardCharsets.UTF_8)) {
+            for (String[] record : buffer) {
+                writer.write(Csv.format(record));
+                writer.newLine();
+            }
+        }
+        chunks.add(chunk);
+        buffer.clear();
+    }
+
+    /// returns all added records in order, records which were not spilled are merged from memory
+    Iterator<String[]> sorted() throws IOException {
+        buffer.sort(comparator);
+        PriorityQueue<Source> queue = new PriorityQueue<>((a, b) -> comparator.compare(a.head, b.head));
+        for (Path chunk : chunks) {
+            BufferedReader reader = Files.newBufferedReader(chunk, StandardCharsets.UTF_8);
+            readers.add(reader);
+            Source source = new Source(() -> {
+                String line = reader.readLine();
+                return line == null ? null : Csv.parse(line);
+            });
+            if (source.advance())
+                queue.add(source);
+        }
+        Iterator<String[]> memory = buffer.iterator();
+        Source memorySource = new Source(() -> memory.hasNext() ? memory.next() : null);
+        if (memorySource.advance())
+            queue.add(memorySource);
+
+        return new Iterator<String[]>() {
+            @Override
+            public boolean hasNext() {
+                return !queue.isEmpty();
+            }
+
+            @Override
+            public String[] next() {
+                Source source = queue.poll();
+                if (source == null)
+                    throw new NoSuchElementException();
+                String[] record = source.head;
+                try {
+                    if (source.advance())
+                        queue.add(source);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return record;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (BufferedReader reader : readers) {
+            reader.close();
+        }
+        for (Path chunk : chunks) {
+            Files.deleteIfExists(chunk);
+        }
+        buffer.clear();
+    }
+
+    private interface RecordSupplier {
+        String[] next() throws IOException;
+    }
+
+    private static final class Source {
+        private final RecordSupplier supplier;
+        private String[] head;
+
+        Source(RecordSupplier supplier) {
+            this.supplier = supplier;
+        }
+
+        boolean advance() throws IOException {
+            head = supplier.next();
+            return head != null;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package splitter.results;
+
+import java.util.List;
+
+public class SplitBatchResult {
+    public final long partition;
+    public final long batch;
+    public final long sourceNodes;
+    public final long createdNodes;
+    public final long createdRelationships;
+    public final long timeMillis;
+    public final long failedNodes;
+    public final long skippedNodes;
+    public final List<String> errors;
+
+    public SplitBatchResult(long partition, long batch, long sourceNodes, long createdNodes, long createdRelationships, long timeMillis, long failedNodes, long skippedNodes, List<String> errors) {
+        this.partition = partition;
+        this.batch = batch;
+        this.sourceNodes = sourceNodes;
+        this.createdNodes = createdNodes;
+        this.createdRelationships = createdRelationships;
+        this.timeMillis = timeMillis;
+        this.failedNodes = failedNodes;
+        this.skippedNodes = skippedNodes;
+        this.errors = errors;
+    }
+}
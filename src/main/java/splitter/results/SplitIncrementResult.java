@@ -0,0 +1,19 @@
+package splitter.results;
+
+public class SplitIncrementResult {
+    public final long entryNodes;
+    public final long exitNodes;
+    public final long createdRelationships;
+    public final long skippedRelationships;
+    public final Long minIndex;
+    public final Long maxIndex;
+
+    public SplitIncrementResult(long entryNodes, long exitNodes, long createdRelationships, long skippedRelationships, Long minIndex, Long maxIndex) {
+        this.entryNodes = entryNodes;
+        this.exitNodes = exitNodes;
+        this.createdRelationships = createdRelationships;
+        this.skippedRelationships = skippedRelationships;
+        this.minIndex = minIndex;
+        this.maxIndex = maxIndex;
+    }
+}
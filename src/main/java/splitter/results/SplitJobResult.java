@@ -0,0 +1,38 @@
+package splitter.results;
+
+import java.util.List;
+
+public class SplitJobResult {
+    public final long jobId;
+    public final String state;
+    public final long submittedAt;
+    public final long sourceNodes;
+    public final long processedNodes;
+    public final long batches;
+    public final long createdNodes;
+    public final long createdRelationships;
+    public final long failedNodes;
+    public final long skippedNodes;
+    public final long timeMillis;
+    public final double nodesPerSecond;
+    public final double relationshipsPerSecond;
+    public final List<String> errors;
+
+    public SplitJobResult(long jobId, String state, long submittedAt, long sourceNodes, long processedNodes, long batches, long createdNodes, long createdRelationships,
+                          long failedNodes, long skippedNodes, long timeMillis, double nodesPerSecond, double relationshipsPerSecond, List<String> errors) {
+        this.jobId = jobId;
+        this.state = state;
+        this.submittedAt = submittedAt;
+        this.sourceNodes = sourceNodes;
+        this.processedNodes = processedNodes;
+        this.batches = batches;
+        this.createdNodes = createdNodes;
+        this.createdRelationships = createdRelationships;
+        this.failedNodes = failedNodes;
+        this.skippedNodes = skippedNodes;
+        this.timeMillis = timeMillis;
+        this.nodesPerSecond = nodesPerSecond;
+        this.relationshipsPerSecond = relationshipsPerSecond;
+        this.errors = errors;
+    }
+}
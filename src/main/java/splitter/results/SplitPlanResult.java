@@ -0,0 +1,29 @@
+package splitter.results;
+
+import org.neo4j.graphdb.Node;
+
+public class SplitPlanResult {
+    public final Node node;
+    public final long entryNodes;
+    public final long exitNodes;
+    public final long junctionNodes;
+    public final long createdNodes;
+    public final long createdRelationships;
+    public final long deletedRelationships;
+    public final long propertyWrites;
+    public final long maxFanOut;
+    public final long estimatedMemoryBytes;
+
+    public SplitPlanResult(Node node, long entryNodes, long exitNodes, long junctionNodes, long createdNodes, long createdRelationships, long deletedRelationships, long propertyWrites, long maxFanOut, long estimatedMemoryBytes) {
+        this.node = node;
+        this.entryNodes = entryNodes;
+        this.exitNodes = exitNodes;
+        this.junctionNodes = junctionNodes;
+        this.createdNodes = createdNodes;
+        this.createdRelationships = createdRelationships;
+        this.deletedRelationships = deletedRelationships;
+        this.propertyWrites = propertyWrites;
+        this.maxFanOut = maxFanOut;
+        this.estimatedMemoryBytes = estimatedMemoryBytes;
+    }
+}
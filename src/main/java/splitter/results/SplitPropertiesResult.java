@@ -0,0 +1,15 @@
+package splitter.results;
+
+import org.neo4j.graphdb.Node;
+
+import java.util.Map;
+
+public class SplitPropertiesResult {
+    public final Node node;
+    public final Map<String, Object> properties;
+
+    public SplitPropertiesResult(Node node, Map<String, Object> properties) {
+        this.node = node;
+        this.properties = properties;
+    }
+}
@@ -0,0 +1,47 @@
+package splitter.results;
+
+public class SplitStatsResult {
+    public final String scope;
+    public final String procedure;
+    public final long startedAt;
+    public final boolean running;
+    public final long calls;
+    public final long splitNodes;
+    public final long skippedNodes;
+    public final long scannedRelationships;
+    public final long locks;
+    public final long lockWaitMillis;
+    public final long createdNodes;
+    public final long createdRelationships;
+    public final long copiedProperties;
+    public final long scanMillis;
+    public final long createMillis;
+    public final long linkMillis;
+    public final long repairMillis;
+    public final long deleteMillis;
+    public final long timeMillis;
+
+    public SplitStatsResult(String scope, String procedure, long startedAt, boolean running, long calls, long splitNodes, long skippedNodes,
+                            long scannedRelationships, long locks, long lockWaitMillis, long createdNodes, long createdRelationships, long copiedProperties,
+                            long scanMillis, long createMillis, long linkMillis, long repairMillis, long deleteMillis, long timeMillis) {
+        this.scope = scope;
+        this.procedure = procedure;
+        this.startedAt = startedAt;
+        this.running = running;
+        this.calls = calls;
+        this.splitNodes = splitNodes;
+        this.skippedNodes = skippedNodes;
+        this.scannedRelationships = scannedRelationships;
+        this.locks = locks;
+        this.lockWaitMillis = lockWaitMillis;
+        this.createdNodes = createdNodes;
+        this.createdRelationships = createdRelationships;
+        this.copiedProperties = copiedProperties;
+        this.scanMillis = scanMillis;
+        this.createMillis = createMillis;
+        this.linkMillis = linkMillis;
+        this.repairMillis = repairMillis;
+        this.deleteMillis = deleteMillis;
+        this.timeMillis = timeMillis;
+    }
+}
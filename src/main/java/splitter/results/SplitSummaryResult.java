@@ -0,0 +1,25 @@
+package splitter.results;
+
+public class SplitSummaryResult {
+    public final Long sourceNode;
+    public final long sourceNodes;
+    public final long splitNodes;
+    public final long entryNodes;
+    public final long exitNodes;
+    public final long junctionNodes;
+    public final long createdRelationships;
+    public final Long minIndex;
+    public final Long maxIndex;
+
+    public SplitSummaryResult(Long sourceNode, long sourceNodes, long splitNodes, long entryNodes, long exitNodes, long junctionNodes, long createdRelationships, Long minIndex, Long maxIndex) {
+        this.sourceNode = sourceNode;
+        this.sourceNodes = sourceNodes;
+        this.splitNodes = splitNodes;
+        this.entryNodes = entryNodes;
+        this.exitNodes = exitNodes;
+        this.junctionNodes = junctionNodes;
+        this.createdRelationships = createdRelationships;
+        this.minIndex = minIndex;
+        this.maxIndex = maxIndex;
+    }
+}
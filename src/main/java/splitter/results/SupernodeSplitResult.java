@@ -0,0 +1,25 @@
+package splitter.results;
+
+public class SupernodeSplitResult {
+    public final long sourceNode;
+    public final long windows;
+    public final long entryNodes;
+    public final long exitNodes;
+    public final long junctionNodes;
+    public final long createdRelationships;
+    public final long deletedRelationships;
+    public final long timeMillis;
+    public final boolean completed;
+
+    public SupernodeSplitResult(long sourceNode, long windows, long entryNodes, long exitNodes, long junctionNodes, long createdRelationships, long deletedRelationships, long timeMillis, boolean completed) {
+        this.sourceNode = sourceNode;
+        this.windows = windows;
+        this.entryNodes = entryNodes;
+        this.exitNodes = exitNodes;
+        this.junctionNodes = junctionNodes;
+        this.createdRelationships = createdRelationships;
+        this.deletedRelationships = deletedRelationships;
+        this.timeMillis = timeMillis;
+        this.completed = completed;
+    }
+}
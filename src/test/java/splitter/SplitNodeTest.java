@@ -4,13 +4,26 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.neo4j.driver.v1.*;
+import org.neo4j.driver.v1.exceptions.ClientException;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.harness.ServerControls;
 import org.neo4j.harness.TestServerBuilders;
+import splitter.config.SplitNodeConfiguration;
+import splitter.results.SplitBatchResult;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -24,6 +37,9 @@ public class SplitNodeTest {
         this.embeddedDatabaseServer = TestServerBuilders
                 .newInProcessBuilder()
                 .withProcedure(SplitNode.class)
+                // one running and one waiting job, so the job tests can fill the queue
+                .withConfig(SplitJobs.MAX_RUNNING_JOBS_SETTING, "1")
+                .withConfig(SplitJobs.MAX_QUEUED_JOBS_SETTING, "1")
                 .newServer();
     }
 
@@ -154,4 +170,694 @@ public class SplitNodeTest {
             assertEquals(4, incomRelRecords.size());
         }
     }
+
+    @Test
+    public void splitNodesBatchedTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("CREATE (n1:F) SET n1.TestId = 1\n" +
+                    "        CREATE (n2:F) SET n2.TestId = 2\n" +
+                    "        CREATE (n3:F) SET n3.TestId = 3\n" +
+                    "        CREATE (n4:F) SET n4.TestId = 4\n" +
+                    "        CREATE (n2)-[r1:Rel]->(n1) SET r1.TestId = 101\n" +
+                    "        CREATE (n3)-[r2:Rel]->(n1) SET r2.TestId = 102\n" +
+                    "        CREATE (n1)-[r3:Rel]->(n4) SET r3.TestId = 104\n" +
+                    "        CREATE (n1)-[r4:OtherRel]->(n2) SET r4.TestId = 201");
+
+            List<Record> batches = session.run("MATCH (n:F) WITH collect(n) as nodes CALL splitter.splitNodesBatched(nodes, {batchSize: 2, startIndex: 0, indexProperty: \"SplitId\", relationshipTypes: [\"Rel\"]}) YIELD batch, sourceNodes, createdNodes, failedNodes RETURN batch, sourceNodes, createdNodes, failedNodes").list();
+            // 4 source nodes in batches of 2
+            assertEquals(2, batches.size());
+            assertThat(batches).allMatch(record -> record.get("sourceNodes").asLong() == 2);
+            assertThat(batches).allMatch(record -> record.get("failedNodes").asLong() == 0);
+            // only node 1 has both incoming and outgoing Rel relationships: 2 entry nodes and 1 exit node
+            assertEquals(3, batches.stream().mapToLong(record -> record.get("createdNodes").asLong()).sum());
+
+            List<Record> records = session.run("MATCH (n:F) WHERE n.TestId = 1 return n").list();
+            assertEquals(3, records.size());
+
+            // ignored OtherRel relationship is copied to each created node
+            List<Record> otherRelRecords = session.run("MATCH (n:F)-[:OtherRel]->() WHERE n.TestId = 1 return n").list();
+            assertEquals(3, otherRelRecords.size());
+        }
+    }
+
+    @Test
+    public void splitNodesParallelTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("CREATE (h1:G {Hub: true}), (h2:G {Hub: true}), (h3:G {Hub: true})\n" +
+                    "        CREATE (a1:G), (b1:G), (b2:G), (a3:G), (b3:G)\n" +
+                    "        CREATE (a1)-[:Rel]->(h1)-[:Rel]->(b1)\n" +
+                    "        CREATE (a1)-[:Rel]->(h2)-[:Rel]->(b2)\n" +
+                    "        CREATE (a3)-[:Rel]->(h3)-[:Rel]->(b3)");
+
+            List<Record> batches = session.run("MATCH (n:G) WHERE n.Hub WITH collect(n) as nodes CALL splitter.splitNodesParallel(nodes, {parallelism: 4, relationshipTypes: [\"Rel\"]}) YIELD partition, sourceNodes, createdNodes, failedNodes RETURN partition, sourceNodes, createdNodes, failedNodes").list();
+            // h1 and h2 have common neighbour a1, so they are split by the same worker
+            assertEquals(2, batches.size());
+            assertThat(batches.stream().map(record -> record.get("sourceNodes").asLong())).containsExactlyInAnyOrder(2L, 1L);
+            assertThat(batches).allMatch(record -> record.get("failedNodes").asLong() == 0);
+            assertEquals(6, batches.stream().mapToLong(record -> record.get("createdNodes").asLong()).sum());
+
+            List<Record> records = session.run("MATCH (n:G) WHERE n.Hub return n").list();
+            assertEquals(6, records.size());
+        }
+    }
+
+    @Test
+    public void splitNodesByLabelTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("CREATE (h:H {Kind: 'hub'}), (a1:H {Kind: 'leaf'}), (a2:H {Kind: 'leaf'}), (b:H {Kind: 'leaf'})\n" +
+                    "        CREATE (a1)-[:Rel]->(h)-[:Rel]->(b)\n" +
+                    "        CREATE (a2)-[:Rel]->(h)");
+
+            List<Record> batches = session.run("CALL splitter.splitNodesByLabel('H', {filterProperty: 'Kind', filterValue: 'hub', batchSize: 1, relationshipTypes: [\"Rel\"]}) YIELD sourceNodes, createdNodes, failedNodes RETURN sourceNodes, createdNodes, failedNodes").list();
+            // created nodes have the same label and property, but they are not split again
+            assertEquals(1, batches.size());
+            assertEquals(1, batches.get(0).get("sourceNodes").asLong());
+            assertEquals(3, batches.get(0).get("createdNodes").asLong());
+            assertEquals(0, batches.get(0).get("failedNodes").asLong());
+
+            List<Record> records = session.run("MATCH (n:H {Kind: 'hub'}) return n").list();
+            assertEquals(3, records.size());
+        }
+    }
+
+    @Test
+    public void splitNodesByLabelReusedIdsTest() throws InterruptedException {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            // ids of deleted filler nodes are lower than ids of source nodes and are reused by created nodes
+            long highestFreedId = session.run("UNWIND range(1, 50) AS i CREATE (f:Filler) RETURN max(id(f)) AS id").single().get("id").asLong();
+            session.run("UNWIND range(1, 5) AS i\n" +
+                    "        CREATE (h:W {Kind: 'hub', TestId: i}), (a:W {Kind: 'leaf'}), (b:W {Kind: 'leaf'})\n" +
+                    "        CREATE (a)-[:Rel]->(h)-[:Rel]->(b)");
+            session.run("MATCH (f:Filler) DELETE f");
+            waitForIdReuse(session, highestFreedId);
+
+            List<Record> batches = session.run("CALL splitter.splitNodesByLabel('W', {filterProperty: 'Kind', filterValue: 'hub', batchSize: 1, relationshipTypes: [\"Rel\"]}) YIELD sourceNodes RETURN sourceNodes").list();
+            assertEquals(5, batches.size());
+
+            // every source node is split into 2 nodes, which are not split again
+            List<Record> records = session.run("MATCH (n:W {Kind: 'hub'}) return n.TestId AS id, count(*) AS nodes").list();
+            assertEquals(5, records.size());
+            for (Record record : records) {
+                assertEquals(2, record.get("nodes").asLong());
+            }
+            assertTrue(session.run("MATCH (n:W {Kind: 'hub'}) WHERE id(n) <= $id return n", Values.parameters("id", highestFreedId)).hasNext());
+        }
+    }
+
+    @Test
+    public void splitNodesByLabelTrackedIdsTest() {
+        GraphDatabaseService db = embeddedDatabaseServer.graph();
+        int sources = 500;
+        try (Transaction tx = db.beginTx()) {
+            db.execute("UNWIND range(1, $sources) AS i\n" +
+                    "        CREATE (h:U), (a), (b)\n" +
+                    "        CREATE (a)-[:Rel]->(h)-[:Rel]->(b)", Collections.singletonMap("sources", sources)).close();
+            tx.success();
+        }
+
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("batchSize", 10);
+        configuration.put("relationshipTypes", new ArrayList<>(Collections.singletonList("Rel")));
+        SplitNodeConfiguration config = SplitNodeConfiguration.build(configuration);
+        BatchedSplitter splitter = new BatchedSplitter(db, config, SplitStatistics.start("test")).trackCreatedNodes(NodeSource.highestNodeId(db));
+        long splitNodes;
+        try (Transaction tx = db.beginTx();
+             Stream<Long> nodeIds = NodeSource.findByLabel(db, "U", config, splitter::isCreatedNode);
+             Stream<SplitBatchResult> batches = splitter.split(nodeIds.iterator())) {
+            splitNodes = batches.mapToLong(batch -> batch.sourceNodes).sum();
+            tx.success();
+        }
+        assertEquals(sources, splitNodes);
+        // 1000 created nodes are recognized without keeping their ids, only ids reused ahead of the search may be kept
+        assertThat(splitter.getTrackedNodeIds()).isLessThan(sources);
+    }
+
+    /// freed ids are released for reuse by the database in the background
+    private static void waitForIdReuse(Session session, long highestFreedId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            long id = session.run("CREATE (p:Probe) WITH p, id(p) AS id DELETE p RETURN id").single().get("id").asLong();
+            if (id <= highestFreedId)
+                return;
+            Thread.sleep(100);
+        }
+    }
+
+    @Test
+    public void splitNodeKernelEngineTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("CREATE (n1:K) SET n1.TestId = 1\n" +
+                    "        CREATE (n2:K) SET n2.TestId = 2\n" +
+                    "        CREATE (n3:K) SET n3.TestId = 3\n" +
+                    "        CREATE (n4:K) SET n4.TestId = 4\n" +
+                    "        CREATE (n1)-[r1:Rel]->(n2) SET r1.TestId = 102\n" +
+                    "        CREATE (n2)-[r2:Rel]->(n3) SET r2.TestId = 203\n" +
+                    "        CREATE (n2)-[r3:Rel]->(n4) SET r3.TestId = 204\n" +
+                    "        CREATE (n4)-[r4:Rel]->(n2) SET r4.TestId = 402\n" +
+                    "        CREATE (n2)-[r5:OtherRel]->(n1) SET r5.TestId = 201\n" +
+                    "        CREATE (n3)-[r6:OtherRel]->(n2) SET r6.TestId = 302");
+
+            List<Record> splitNodes = session.run("MATCH (n:K) where n.TestId = 2 WITH collect(n) as nodes CALL splitter.splitNodes(nodes, {engine: 'kernel', startIndex: 0, indexProperty: \"SplitId\", relationshipTypes: [\"Rel\"], greedyRelationshipTypes: [\"OtherRel\"]}) YIELD node RETURN node").list();
+            // the same result as splitNodeGreedlyRelationsTest with core engine
+            assertEquals(6, splitNodes.size());
+
+            List<Record> incomRelRecords = session.run("MATCH ()-[r:Rel]->(n:K) where n.TestId = 2 return r").list();
+            assertEquals(6, incomRelRecords.size());
+
+            List<Record> outgoingRelRecords = session.run("MATCH (n:K)-[r:Rel]->() where n.TestId = 2 return r").list();
+            assertEquals(6, outgoingRelRecords.size());
+
+            List<Record> incomGreedyRelRecords = session.run("MATCH ()-[:OtherRel]->(n:K) where n.TestId = 2 return distinct n").list();
+            assertEquals(4, incomGreedyRelRecords.size());
+
+            List<Record> outgoingGreedyRelRecords = session.run("MATCH (n:K)-[:OtherRel]->() where n.TestId = 2 return distinct n").list();
+            assertEquals(2, outgoingGreedyRelRecords.size());
+
+            List<Record> indexes = session.run("MATCH (n:K) where n.TestId = 2 return n.SplitId as index ORDER BY index").list();
+            assertThat(indexes.stream().map(record -> record.get("index").asInt())).containsExactly(0, 1, 2, 3, 4, 5);
+        }
+    }
+
+    @Test
+    public void planSplitTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("CREATE (n1:L) SET n1.TestId = 1\n" +
+                    "        CREATE (n2:L) SET n2.TestId = 2\n" +
+                    "        CREATE (n3:L) SET n3.TestId = 3\n" +
+                    "        CREATE (n4:L) SET n4.TestId = 4\n" +
+                    "        CREATE (n1)-[r1:Rel]->(n2) SET r1.TestId = 102\n" +
+                    "        CREATE (n2)-[r2:Rel]->(n3) SET r2.TestId = 203\n" +
+                    "        CREATE (n2)-[r3:Rel]->(n4) SET r3.TestId = 204\n" +
+                    "        CREATE (n4)-[r4:Rel]->(n2) SET r4.TestId = 402\n" +
+                    "        CREATE (n2)-[r5:OtherRel]->(n1) SET r5.TestId = 201\n" +
+                    "        CREATE (n3)-[r6:OtherRel]->(n2) SET r6.TestId = 302");
+
+            List<Record> plans = session.run("MATCH (n:L) where n.TestId = 2 WITH collect(n) as nodes CALL splitter.planSplit(nodes, {indexProperty: \"SplitId\", relationshipTypes: [\"Rel\", \"OtherRel\"]}) YIELD entryNodes, exitNodes, junctionNodes, createdNodes, createdRelationships, deletedRelationships, propertyWrites, maxFanOut RETURN *").list();
+            assertEquals(1, plans.size());
+            Record plan = plans.get(0);
+            // Rel: 2 entry and 2 exit nodes, OtherRel: 1 entry and 1 exit node
+            assertEquals(3, plan.get("entryNodes").asLong());
+            assertEquals(3, plan.get("exitNodes").asLong());
+            assertEquals(0, plan.get("junctionNodes").asLong());
+            assertEquals(6, plan.get("createdNodes").asLong());
+            // Rel: 2 + 2 copies and 2 * 2 links, OtherRel: 1 + 1 copies and 1 link
+            assertEquals(11, plan.get("createdRelationships").asLong());
+            assertEquals(6, plan.get("deletedRelationships").asLong());
+            // 6 nodes with TestId and SplitId, 11 relationships with TestId
+            assertEquals(23, plan.get("propertyWrites").asLong());
+            assertEquals(3, plan.get("maxFanOut").asLong());
+
+            // planning writes nothing
+            assertEquals(1, session.run("MATCH (n:L) where n.TestId = 2 return n").list().size());
+
+            List<Record> splitNodes = session.run("MATCH (n:L) where n.TestId = 2 WITH collect(n) as nodes CALL splitter.splitNodes(nodes, {maxCreatedRelationships: 10, relationshipTypes: [\"Rel\", \"OtherRel\"]}) YIELD node RETURN node").list();
+            // node is skipped, because it would create 11 relationships
+            assertEquals(0, splitNodes.size());
+            assertEquals(1, session.run("MATCH (n:L) where n.TestId = 2 return n").list().size());
+
+            splitNodes = session.run("MATCH (n:L) where n.TestId = 2 WITH collect(n) as nodes CALL splitter.splitNodes(nodes, {maxCreatedRelationships: 11, maxFanOut: 3, relationshipTypes: [\"Rel\", \"OtherRel\"]}) YIELD node RETURN node").list();
+            assertEquals(6, splitNodes.size());
+        }
+    }
+
+    @Test
+    public void splitNodeJunctionTopologyTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("CREATE (n1:J) SET n1.TestId = 1\n" +
+                    "        CREATE (n2:J) SET n2.TestId = 2\n" +
+                    "        CREATE (n3:J) SET n3.TestId = 3\n" +
+                    "        CREATE (n4:J) SET n4.TestId = 4\n" +
+                    "        CREATE (n5:J) SET n5.TestId = 5\n" +
+                    "        CREATE (n6:J) SET n6.TestId = 6\n" +
+                    "        CREATE (n7:J) SET n7.TestId = 7\n" +
+                    "        CREATE (n2)-[r1:Rel]->(n1) SET r1.TestId = 201\n" +
+                    "        CREATE (n3)-[r2:Rel]->(n1) SET r2.TestId = 301\n" +
+                    "        CREATE (n4)-[r3:Rel]->(n1) SET r3.TestId = 401\n" +
+                    "        CREATE (n1)-[r4:Rel]->(n5) SET r4.TestId = 105\n" +
+                    "        CREATE (n1)-[r5:Rel]->(n6) SET r5.TestId = 106\n" +
+                    "        CREATE (n1)-[r6:Rel]->(n7) SET r6.TestId = 107");
+
+            List<Record> plans = session.run("MATCH (n:J) where n.TestId = 1 WITH collect(n) as nodes CALL splitter.planSplit(nodes, {topology: 'junction', relationshipTypes: [\"Rel\"]}) YIELD junctionNodes, createdNodes, createdRelationships RETURN *").list();
+            // 3 + 3 copies and 3 + 3 links through the junction node instead of 3 * 3 links
+            assertEquals(12, plans.get(0).get("createdRelationships").asLong());
+            assertEquals(1, plans.get(0).get("junctionNodes").asLong());
+            // 3 entry, 3 exit and 1 junction node
+            assertEquals(7, plans.get(0).get("createdNodes").asLong());
+
+            List<Record> splitNodes = session.run("MATCH (n:J) where n.TestId = 1 WITH collect(n) as nodes CALL splitter.splitNodes(nodes, {topology: 'junction', startIndex: 0, indexProperty: \"SplitId\", relationshipTypes: [\"Rel\"]}) YIELD node RETURN node").list();
+            // 3 entry nodes, 3 exit nodes and a junction node
+            assertEquals(7, splitNodes.size());
+
+            List<Record> junctions = session.run("MATCH (j:SplitJunction {splitType: 'Rel'})<-[:Rel]-(:J {TestId: 1}) return distinct j").list();
+            assertEquals(1, junctions.size());
+
+            List<Record> relationships = session.run("MATCH (n:J)-[r:Rel]-() where n.TestId = 1 return distinct r").list();
+            assertEquals(12, relationships.size());
+
+            // each pair of former neighbours is still connected, entry relationship properties are kept on the link to the junction node
+            List<Record> paths = session.run("MATCH (a:J)-[:Rel]->(:J {TestId: 1})-[r:Rel]->(:SplitJunction)-[:Rel]->(:J {TestId: 1})-[:Rel]->(b:J) return a.TestId as a, b.TestId as b, r.TestId as link").list();
+            assertEquals(9, paths.size());
+            assertTrue(paths.stream().allMatch(path -> path.get("link").asInt() == path.get("a").asInt() * 100 + 1));
+        }
+    }
+
+    @Test
+    public void splitNodesSummaryTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            for (String label : new String[]{"M", "N"}) {
+                session.run("CREATE (n1:" + label + ") SET n1.TestId = 1\n" +
+                        "        CREATE (n2:" + label + ") SET n2.TestId = 2\n" +
+                        "        CREATE (n3:" + label + ") SET n3.TestId = 3\n" +
+                        "        CREATE (n4:" + label + ") SET n4.TestId = 4\n" +
+                        "        CREATE (n1)-[r1:Rel]->(n2) SET r1.TestId = 102\n" +
+                        "        CREATE (n2)-[r2:Rel]->(n3) SET r2.TestId = 203\n" +
+                        "        CREATE (n2)-[r3:Rel]->(n4) SET r3.TestId = 204\n" +
+                        "        CREATE (n4)-[r4:Rel]->(n2) SET r4.TestId = 402\n" +
+                        "        CREATE (n2)-[r5:OtherRel]->(n1) SET r5.TestId = 201\n" +
+                        "        CREATE (n3)-[r6:OtherRel]->(n2) SET r6.TestId = 302");
+            }
+
+            List<Record> summaries = session.run("MATCH (n:M) where n.TestId IN [1, 2] WITH n ORDER BY n.TestId WITH collect(n) as sources CALL splitter.splitNodesSummary(sources, {startIndex: 10, indexProperty: \"SplitId\", relationshipTypes: [\"Rel\", \"OtherRel\"]}) YIELD sourceNode, splitNodes, entryNodes, exitNodes, createdRelationships, minIndex, maxIndex RETURN *").list();
+            assertEquals(2, summaries.size());
+            // the first node has no relationships of the same type in both directions and is left as is
+            assertEquals(0, summaries.get(0).get("splitNodes").asLong());
+            assertTrue(summaries.get(0).get("minIndex").isNull());
+            Record summary = summaries.get(1);
+            assertEquals(1, summary.get("splitNodes").asLong());
+            assertEquals(3, summary.get("entryNodes").asLong());
+            assertEquals(3, summary.get("exitNodes").asLong());
+            assertEquals(11, summary.get("createdRelationships").asLong());
+            assertEquals(10, summary.get("minIndex").asLong());
+            assertEquals(15, summary.get("maxIndex").asLong());
+            assertEquals(6, session.run("MATCH (n:M) where n.TestId = 2 return n").list().size());
+
+            summaries = session.run("MATCH (n:N) WITH collect(n) as sources CALL splitter.splitNodesSummary(sources, {summary: 'call', startIndex: 0, indexProperty: \"SplitId\", relationshipTypes: [\"Rel\", \"OtherRel\"]}) YIELD sourceNode, sourceNodes, splitNodes, entryNodes, exitNodes, junctionNodes, minIndex, maxIndex RETURN *").list();
+            assertEquals(1, summaries.size());
+            summary = summaries.get(0);
+            assertTrue(summary.get("sourceNode").isNull());
+            assertEquals(4, summary.get("sourceNodes").asLong());
+            assertEquals(summary.get("entryNodes").asLong() + summary.get("exitNodes").asLong(), session.run("MATCH (n:N) where n.SplitId IS NOT NULL return n").list().size());
+            assertEquals(0, summary.get("junctionNodes").asLong());
+            assertEquals(0, summary.get("minIndex").asLong());
+        }
+    }
+
+    @Test
+    public void statsTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("CREATE (n1:P) SET n1.TestId = 1\n" +
+                    "        CREATE (n2:P) SET n2.TestId = 2\n" +
+                    "        CREATE (n3:P) SET n3.TestId = 3\n" +
+                    "        CREATE (n2)-[r1:Rel]->(n1) SET r1.TestId = 201\n" +
+                    "        CREATE (n1)-[r2:Rel]->(n3) SET r2.TestId = 103\n" +
+                    "        CREATE (n1)-[r3:OtherRel]->(n3) SET r3.TestId = 301");
+
+            session.run("MATCH (n:P) where n.TestId = 1 WITH collect(n) as nodes CALL splitter.splitNodes(nodes, {startIndex: 0, indexProperty: \"SplitId\", relationshipTypes: [\"Rel\"]}) YIELD node RETURN node").list();
+
+            List<Record> calls = session.run("CALL splitter.stats() YIELD scope, procedure, running, splitNodes, scannedRelationships, createdNodes, createdRelationships, copiedProperties " +
+                    "WHERE scope = 'call' RETURN * LIMIT 1").list();
+            assertEquals(1, calls.size());
+            Record call = calls.get(0);
+            assertEquals("splitter.splitNodes", call.get("procedure").asString());
+            assertFalse(call.get("running").asBoolean());
+            assertEquals(1, call.get("splitNodes").asLong());
+            assertEquals(3, call.get("scannedRelationships").asLong());
+            assertEquals(2, call.get("createdNodes").asLong());
+            // 2 copies of split relationships, 1 link and 2 copies of OtherRel
+            assertEquals(5, call.get("createdRelationships").asLong());
+            // 2 nodes with TestId and SplitId, 5 relationships with TestId
+            assertEquals(9, call.get("copiedProperties").asLong());
+
+            Record total = session.run("CALL splitter.stats() YIELD scope, calls, createdNodes WHERE scope = 'total' RETURN *").single();
+            assertTrue(total.get("calls").asLong() >= 1);
+            assertTrue(total.get("createdNodes").asLong() >= 2);
+        }
+    }
+
+    @Test
+    public void resplitNodesTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("CREATE (n1:Q) SET n1.TestId = 1\n" +
+                    "        CREATE (n2:Q) SET n2.TestId = 2\n" +
+                    "        CREATE (n3:Q) SET n3.TestId = 3\n" +
+                    "        CREATE (n4:Q) SET n4.TestId = 4\n" +
+                    "        CREATE (n5:Q) SET n5.TestId = 5\n" +
+                    "        CREATE (n6:Q) SET n6.TestId = 6\n" +
+                    "        CREATE (n7:Q) SET n7.TestId = 7\n" +
+                    "        CREATE (n2)-[r1:Rel]->(n1) SET r1.TestId = 201\n" +
+                    "        CREATE (n3)-[r2:Rel]->(n1) SET r2.TestId = 301\n" +
+                    "        CREATE (n1)-[r3:Rel]->(n6) SET r3.TestId = 106\n" +
+                    "        CREATE (n1)-[r4:OtherRel]->(n7) SET r4.TestId = 107");
+            session.run("MATCH (n:Q) where n.TestId = 1 WITH collect(n) as nodes CALL splitter.splitNodes(nodes, {startIndex: 0, indexProperty: \"SplitId\", relationshipTypes: [\"Rel\"]}) YIELD node RETURN node").list();
+
+            // new relationships are added to the entry node with index 0
+            session.run("MATCH (m:Q {TestId: 1, SplitId: 0}), (n4:Q {TestId: 4}), (n5:Q {TestId: 5}) CREATE (n4)-[:Rel {TestId: 401}]->(m), (m)-[:Rel {TestId: 105}]->(n5)");
+
+            // the kernel engine and limits are rejected, nothing is written
+            ClientException kernel = assertThrows(ClientException.class, () -> session.run("MATCH (n:Q) where n.TestId = 1 WITH collect(n) as family " +
+                    "MATCH (:Q {TestId: 4})-[r1:Rel]->() CALL splitter.resplitNodes(family, [r1], {engine: 'kernel', relationshipTypes: [\"Rel\"]}) YIELD entryNodes RETURN *").list());
+            assertThat(kernel.getMessage()).contains("only the core engine");
+            ClientException limits = assertThrows(ClientException.class, () -> session.run("MATCH (n:Q) where n.TestId = 1 WITH collect(n) as family " +
+                    "MATCH (:Q {TestId: 4})-[r1:Rel]->() CALL splitter.resplitNodes(family, [r1], {maxFanOut: 10, relationshipTypes: [\"Rel\"]}) YIELD entryNodes RETURN *").list());
+            assertThat(limits.getMessage()).contains("maxFanOut");
+            assertEquals(3, session.run("MATCH (n:Q {TestId: 1}) return n").list().size());
+
+            Record result = session.run("MATCH (n:Q) where n.TestId = 1 WITH collect(n) as family " +
+                    "MATCH (:Q {TestId: 4})-[r1:Rel]->(), ()-[r2:Rel]->(:Q {TestId: 5}) " +
+                    "CALL splitter.resplitNodes(family, [r1, r2], {indexProperty: \"SplitId\", relationshipTypes: [\"Rel\"]}) " +
+                    "YIELD entryNodes, exitNodes, createdRelationships, skippedRelationships, minIndex, maxIndex RETURN *").single();
+            assertEquals(1, result.get("entryNodes").asLong());
+            assertEquals(1, result.get("exitNodes").asLong());
+            // entry node: copy, link to the old exit node and OtherRel; exit node: copy, links from 3 entry nodes and OtherRel
+            assertEquals(8, result.get("createdRelationships").asLong());
+            assertEquals(0, result.get("skippedRelationships").asLong());
+            assertEquals(3, result.get("minIndex").asLong());
+            assertEquals(4, result.get("maxIndex").asLong());
+
+            assertEquals(5, session.run("MATCH (n:Q {TestId: 1}) return n").list().size());
+            assertEquals(0, session.run("MATCH (:Q {TestId: 4})-[r:Rel]->(:Q {SplitId: 0}) return r").list().size());
+            assertEquals(1, session.run("MATCH (:Q {TestId: 4})-[:Rel]->(:Q {TestId: 1})-[:Rel]->(:Q {TestId: 1})-[:Rel]->(:Q {TestId: 5}) return 1").list().size());
+            assertEquals(1, session.run("MATCH (:Q {TestId: 2})-[:Rel]->(:Q {TestId: 1})-[:Rel]->(:Q {TestId: 1})-[:Rel]->(:Q {TestId: 5}) return 1").list().size());
+            assertEquals(5, session.run("MATCH (:Q {TestId: 1})-[r:OtherRel]->(:Q {TestId: 7}) return r").list().size());
+
+            Record call = session.run("CALL splitter.stats() YIELD scope, procedure, createdNodes, createdRelationships " +
+                    "WHERE scope = 'call' RETURN * LIMIT 1").single();
+            assertEquals("splitter.resplitNodes", call.get("procedure").asString());
+            assertEquals(2, call.get("createdNodes").asLong());
+            assertEquals(8, call.get("createdRelationships").asLong());
+        }
+    }
+
+    @Test
+    public void resplitNodesJunctionTopologyGreedyTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("CREATE (n1:R) SET n1.TestId = 1\n" +
+                    "        CREATE (n2:R) SET n2.TestId = 2\n" +
+                    "        CREATE (n3:R) SET n3.TestId = 3\n" +
+                    "        CREATE (n4:R) SET n4.TestId = 4\n" +
+                    "        CREATE (n5:R) SET n5.TestId = 5\n" +
+                    "        CREATE (n2)-[:Rel]->(n1)-[:Rel]->(n3)\n" +
+                    "        CREATE (n4)-[:GreedyRel]->(n1)");
+            session.run("MATCH (n:R) where n.TestId = 1 WITH collect(n) as nodes CALL splitter.splitNodes(nodes, {topology: 'junction', startIndex: 0, indexProperty: \"SplitId\", " +
+                    "relationshipTypes: [\"Rel\"], greedyRelationshipTypes: [\"GreedyRel\"]}) YIELD node RETURN node").list();
+
+            // a new "greedy" relationship is added to the "non-greedy" entry node, the family has no "greedy" exit nodes
+            session.run("MATCH (m:R {TestId: 1, SplitId: 0}), (n5:R {TestId: 5}) CREATE (n5)-[:GreedyRel]->(m)");
+            Record result = session.run("MATCH (n:R) where n.TestId = 1 WITH collect(n) as family " +
+                    "MATCH (:R {TestId: 5})-[r:GreedyRel]->() " +
+                    "CALL splitter.resplitNodes(family, [r], {topology: 'junction', indexProperty: \"SplitId\", relationshipTypes: [\"Rel\"], greedyRelationshipTypes: [\"GreedyRel\"]}) " +
+                    "YIELD entryNodes, exitNodes, createdRelationships, skippedRelationships, minIndex RETURN *").single();
+            // the junction node of the "greedy" type is found from its entry node
+            assertEquals(1, result.get("entryNodes").asLong());
+            assertEquals(0, result.get("exitNodes").asLong());
+            assertEquals(0, result.get("skippedRelationships").asLong());
+            // copy of the new relationship and the link to the junction node
+            assertEquals(2, result.get("createdRelationships").asLong());
+            assertEquals(3, result.get("minIndex").asLong());
+
+            assertEquals(1, session.run("MATCH (:R {TestId: 5})-[:GreedyRel]->(:R {TestId: 1})-[:GreedyRel]->(:SplitJunction {splitType: 'GreedyRel'})" +
+                    "-[:GreedyRel]->(:SplitJunction {splitType: 'Rel'})-[:Rel]->(:R {TestId: 1})-[:Rel]->(:R {TestId: 3}) return 1").list().size());
+        }
+    }
+
+    @Test
+    public void splitSupernodeTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("CREATE (n1:S) SET n1.TestId = 1\n" +
+                    "        CREATE (n2:S) SET n2.TestId = 2\n" +
+                    "        CREATE (n3:S) SET n3.TestId = 3\n" +
+                    "        CREATE (n4:S) SET n4.TestId = 4\n" +
+                    "        CREATE (n5:S) SET n5.TestId = 5\n" +
+                    "        CREATE (n6:S) SET n6.TestId = 6\n" +
+                    "        CREATE (n7:S) SET n7.TestId = 7\n" +
+                    "        CREATE (n2)-[r1:Rel]->(n1) SET r1.TestId = 201\n" +
+                    "        CREATE (n3)-[r2:Rel]->(n1) SET r2.TestId = 301\n" +
+                    "        CREATE (n4)-[r3:Rel]->(n1) SET r3.TestId = 401\n" +
+                    "        CREATE (n1)-[r4:Rel]->(n5) SET r4.TestId = 105\n" +
+                    "        CREATE (n1)-[r5:Rel]->(n6) SET r5.TestId = 106\n" +
+                    "        CREATE (n1)-[r6:OtherRel]->(n7) SET r6.TestId = 107");
+
+            // 16 relationships would be created
+            ClientException limit = assertThrows(ClientException.class, () -> session.run("MATCH (n:S) where n.TestId = 1 " +
+                    "CALL splitter.splitSupernode(n, {maxCreatedRelationships: 10, relationshipTypes: [\"Rel\"]}) YIELD windows RETURN *").list());
+            assertThat(limit.getMessage()).contains("maxCreatedRelationships is 10");
+            assertEquals(6, session.run("MATCH (:S {TestId: 1})-[r]-() return r").list().size());
+
+            Record result = session.run("MATCH (n:S) where n.TestId = 1 CALL splitter.splitSupernode(n, {windowSize: 2, startIndex: 0, indexProperty: \"SplitId\", relationshipTypes: [\"Rel\"]}) " +
+                    "YIELD windows, entryNodes, exitNodes, createdRelationships, deletedRelationships RETURN *").single();
+            assertEquals(3, result.get("entryNodes").asLong());
+            assertEquals(2, result.get("exitNodes").asLong());
+            // 5 copies, 3 * 2 links and 5 copies of OtherRel
+            assertEquals(16, result.get("createdRelationships").asLong());
+            assertEquals(6, result.get("deletedRelationships").asLong());
+            assertTrue(result.get("windows").asLong() > 3);
+
+            List<Record> indexes = session.run("MATCH (n:S) where n.TestId = 1 return n.SplitId as index ORDER BY index").list();
+            assertThat(indexes.stream().map(record -> record.get("index").asInt())).containsExactly(0, 1, 2, 3, 4);
+            assertEquals(6, session.run("MATCH (:S {TestId: 1})-[r:Rel]->(:S {TestId: 1}) return r").list().size());
+            assertEquals(1, session.run("MATCH (:S {TestId: 2})-[:Rel]->(:S {TestId: 1})-[:Rel]->(:S {TestId: 1})-[:Rel]->(:S {TestId: 6}) return 1").list().size());
+            assertEquals(5, session.run("MATCH (:S {TestId: 1})-[r:OtherRel]->(:S {TestId: 7}) return r").list().size());
+            // markers are deleted with the source node
+            assertEquals(0, session.run("MATCH (n:S {TestId: 1})-[r]-() WHERE type(r) STARTS WITH '__Split' return r").list().size());
+
+            Record call = session.run("CALL splitter.stats() YIELD scope, procedure, splitNodes, createdNodes, createdRelationships " +
+                    "WHERE scope = 'call' RETURN * LIMIT 1").single();
+            assertEquals("splitter.splitSupernode", call.get("procedure").asString());
+            assertEquals(1, call.get("splitNodes").asLong());
+            assertEquals(5, call.get("createdNodes").asLong());
+            assertEquals(16, call.get("createdRelationships").asLong());
+        }
+    }
+
+    @Test
+    public void splitSupernodeResumeTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            for (String group : new String[]{"a", "b"}) {
+                session.run("CREATE (n1:X) SET n1.Group = $group, n1.Name = 'hub'\n" +
+                        "        CREATE (n2:X) SET n2.Group = $group, n2.Name = 'in1'\n" +
+                        "        CREATE (n3:X) SET n3.Group = $group, n3.Name = 'in2'\n" +
+                        "        CREATE (n4:X) SET n4.Group = $group, n4.Name = 'out1'\n" +
+                        "        CREATE (n5:X) SET n5.Group = $group, n5.Name = 'out2'\n" +
+                        "        CREATE (n6:X) SET n6.Group = $group, n6.Name = 'greedy1'\n" +
+                        "        CREATE (n7:X) SET n7.Group = $group, n7.Name = 'greedy2'\n" +
+                        "        CREATE (n8:X) SET n8.Group = $group, n8.Name = 'other'\n" +
+                        "        CREATE (n2)-[:Rel]->(n1)\n" +
+                        "        CREATE (n3)-[:Rel]->(n1)\n" +
+                        "        CREATE (n1)-[:Rel]->(n4)\n" +
+                        "        CREATE (n1)-[:Rel]->(n5)\n" +
+                        "        CREATE (n6)-[:Greedy]->(n1)\n" +
+                        "        CREATE (n7)-[:Greedy]->(n1)\n" +
+                        "        CREATE (n1)-[:OtherRel]->(n8)", Values.parameters("group", group));
+            }
+            String split = "MATCH (n:X) where n.Group = $group AND n.Name = 'hub' CALL splitter.splitSupernode(n, {windowSize: 1, maxWindows: $maxWindows, " +
+                    "relationshipTypes: [\"Rel\"], greedyRelationshipTypes: [\"Greedy\"]}) YIELD windows, completed RETURN *";
+            Record uninterrupted = session.run(split, Values.parameters("group", "a", "maxWindows", Integer.MAX_VALUE)).single();
+            assertTrue(uninterrupted.get("completed").asBoolean());
+
+            // every call stops after one window as if the previous call had failed, so each phase is resumed by the next call
+            // and each entry node, which has 2 exit nodes, is linked by 2 windows
+            long windows = 0;
+            int calls = 0;
+            boolean completed = false;
+            while (!completed) {
+                Record result = session.run(split, Values.parameters("group", "b", "maxWindows", 1)).single();
+                completed = result.get("completed").asBoolean();
+                windows += result.get("windows").asLong();
+                assertTrue(++calls <= 100);
+            }
+            assertEquals(uninterrupted.get("windows").asLong(), windows);
+
+            String signature = "MATCH (a:X)-[r]->(b:X) WHERE a.Group = $group RETURN a.Name AS from, type(r) AS type, b.Name AS to, count(*) AS count ORDER BY from, type, to, count";
+            List<Record> expected = session.run(signature, Values.parameters("group", "a")).list();
+            List<Record> resumed = session.run(signature, Values.parameters("group", "b")).list();
+            assertEquals(expected.size(), resumed.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).asMap(), resumed.get(i).asMap());
+            }
+            // each of 4 entry nodes is linked to both exit nodes
+            assertEquals(8, session.run("MATCH (:X {Group: 'b', Name: 'hub'})-[r:Rel|Greedy]->(:X {Group: 'b', Name: 'hub'}) return r").list().size());
+            assertEquals(0, session.run("MATCH (n:X {Group: 'b'})-[r]-() WHERE type(r) STARTS WITH '__Split' return r").list().size());
+        }
+    }
+
+    @Test
+    public void splitNodePrototypePropertiesTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            for (String engine : new String[]{"core", "kernel"}) {
+                session.run("CREATE (n1:T) SET n1.TestId = 1, n1.Engine = $engine, n1.Name = 'hub', n1.Color = 'red'\n" +
+                        "        CREATE (n2:T) SET n2.TestId = 2, n2.Engine = $engine\n" +
+                        "        CREATE (n3:T) SET n3.TestId = 3, n3.Engine = $engine\n" +
+                        "        CREATE (n2)-[:Rel]->(n1)\n" +
+                        "        CREATE (n3)-[:Rel]->(n1)\n" +
+                        "        CREATE (n1)-[:Rel]->(n2)\n" +
+                        "        CREATE (n1)-[:OtherRel]->(n3)", Values.parameters("engine", engine));
+
+                Record plan = session.run("MATCH (n:T) where n.TestId = 1 AND n.Engine = $engine WITH collect(n) as nodes " +
+                        "CALL splitter.planSplit(nodes, {properties: 'prototype', relationshipTypes: [\"Rel\"]}) YIELD createdNodes RETURN createdNodes",
+                        Values.parameters("engine", engine)).single();
+                assertEquals(4, plan.get("createdNodes").asLong());
+
+                List<Record> splitNodes = session.run("MATCH (n:T) where n.TestId = 1 AND n.Engine = $engine WITH collect(n) as nodes " +
+                        "CALL splitter.splitNodes(nodes, {engine: $engine, properties: 'prototype', keepProperties: ['TestId', 'Engine'], startIndex: 0, indexProperty: \"SplitId\", relationshipTypes: [\"Rel\"]}) YIELD node RETURN node",
+                        Values.parameters("engine", engine)).list();
+                // the prototype node is not returned
+                assertEquals(3, splitNodes.size());
+                // but it is counted: 2 entry, 1 exit and 1 prototype node
+                assertEquals(4, session.run("CALL splitter.stats() YIELD scope, createdNodes WHERE scope = 'call' RETURN createdNodes LIMIT 1").single().get("createdNodes").asLong());
+
+                // split nodes keep only kept and index properties
+                List<Record> keys = session.run("MATCH (n:T) where n.TestId = 1 AND n.Engine = $engine return keys(n) as keys", Values.parameters("engine", engine)).list();
+                assertEquals(3, keys.size());
+                for (Record record : keys) {
+                    assertThat(record.get("keys").asList()).containsExactlyInAnyOrder("TestId", "Engine", "SplitId");
+                }
+
+                List<Record> prototypes = session.run("MATCH (n:T)-[:SPLIT_PROTOTYPE]->(p:SplitPrototype) where n.TestId = 1 AND n.Engine = $engine return distinct p",
+                        Values.parameters("engine", engine)).list();
+                assertEquals(1, prototypes.size());
+                assertEquals("red", prototypes.get(0).get("p").asNode().get("Color").asString());
+
+                List<Record> properties = session.run("MATCH (n:T) where n.TestId = 1 AND n.Engine = $engine WITH collect(n) as nodes " +
+                        "CALL splitter.properties(nodes) YIELD properties RETURN properties.Name as name, properties.Color as color, properties.SplitId as index ORDER BY index",
+                        Values.parameters("engine", engine)).list();
+                assertThat(properties.stream().map(record -> record.get("name").asString() + record.get("color").asString() + record.get("index").asInt()))
+                        .containsExactly("hubred0", "hubred1", "hubred2");
+
+                // OtherRel is still copied to each split node, but not to the prototype node
+                assertEquals(3, session.run("MATCH (n:T)-[r:OtherRel]->() where n.TestId = 1 AND n.Engine = $engine return r", Values.parameters("engine", engine)).list().size());
+            }
+        }
+    }
+
+    @Test
+    public void overlappingRelationshipTypesTest() {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("CREATE (n1:Z) SET n1.TestId = 1\n" +
+                    "        CREATE (n2:Z) SET n2.TestId = 2\n" +
+                    "        CREATE (n2)-[:Rel]->(n1)\n" +
+                    "        CREATE (n1)-[:Rel]->(n2)");
+            // kernel engine can not split a type as "greedy" and "non-greedy" at once and rejects it
+            ClientException overlapping = assertThrows(ClientException.class, () -> session.run("MATCH (n:Z) where n.TestId = 1 WITH collect(n) as nodes " +
+                    "CALL splitter.splitNodes(nodes, {engine: \"kernel\", relationshipTypes: [\"Rel\", \"OtherRel\"], greedyRelationshipTypes: [\"Rel\"]}) YIELD node RETURN node").list());
+            assertThat(overlapping.getMessage()).contains("should not both contain [Rel]");
+            assertEquals(1, session.run("MATCH (n:Z) where n.TestId = 1 return n").list().size());
+
+            // core engine keeps splitting such a type in both loops
+            List<Record> split = session.run("MATCH (n:Z) where n.TestId = 1 WITH collect(n) as nodes " +
+                    "CALL splitter.splitNodes(nodes, {relationshipTypes: [\"Rel\", \"OtherRel\"], greedyRelationshipTypes: [\"Rel\"]}) YIELD node RETURN node").list();
+            assertThat(split).isNotEmpty();
+            assertEquals(0, session.run("MATCH (n:Z) where n.TestId = 1 return n").list().size());
+        }
+    }
+
+    @Test
+    public void submitJobTest() throws InterruptedException {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session()) {
+            session.run("UNWIND range(1, 3) AS i\n" +
+                    "        CREATE (n:V) SET n.TestId = i\n" +
+                    "        CREATE (n2:V) SET n2.TestId = 10 + i\n" +
+                    "        CREATE (n3:V) SET n3.TestId = 20 + i\n" +
+                    "        CREATE (n2)-[:Rel]->(n)-[:Rel]->(n3)");
+
+            Record submitted = session.run("MATCH (n:V) where n.TestId < 10 WITH collect(n) as nodes " +
+                    "CALL splitter.submit(nodes, {batchSize: 2, relationshipTypes: [\"Rel\"]}) YIELD jobId, sourceNodes RETURN *").single();
+            assertEquals(3, submitted.get("sourceNodes").asLong());
+            long jobId = submitted.get("jobId").asLong();
+
+            Record job = null;
+            for (int i = 0; i < 100; i++) {
+                job = session.run("CALL splitter.job($jobId)", Values.parameters("jobId", jobId)).single();
+                if (!job.get("state").asString().equals("queued") && !job.get("state").asString().equals("running"))
+                    break;
+                Thread.sleep(100);
+            }
+            assertEquals("finished", job.get("state").asString());
+            assertEquals(3, job.get("processedNodes").asLong());
+            assertEquals(2, job.get("batches").asLong());
+            assertEquals(6, job.get("createdNodes").asLong());
+            // 2 copies and 1 link for each source node
+            assertEquals(9, job.get("createdRelationships").asLong());
+            assertEquals(6, session.run("MATCH (n:V) where n.TestId < 10 return n").list().size());
+
+            // finished jobs are listed and can not be cancelled
+            assertTrue(session.run("CALL splitter.jobs() YIELD jobId WHERE jobId = $jobId RETURN jobId", Values.parameters("jobId", jobId)).hasNext());
+            assertEquals("finished", session.run("CALL splitter.cancel($jobId)", Values.parameters("jobId", jobId)).single().get("state").asString());
+            assertFalse(session.run("CALL splitter.job(-1)").hasNext());
+        }
+    }
+
+    @Test
+    public void cancelJobsTest() throws InterruptedException {
+        try (Driver driver = GraphDatabase.driver(embeddedDatabaseServer.boltURI(), driverConfig);
+             Session session = driver.session();
+             Session blockingSession = driver.session()) {
+            session.run("UNWIND range(1, 3) AS i\n" +
+                    "        CREATE (n:Y) SET n.TestId = i\n" +
+                    "        CREATE (n2:Y) SET n2.TestId = 10 + i\n" +
+                    "        CREATE (n3:Y) SET n3.TestId = 20 + i\n" +
+                    "        CREATE (n2)-[:Rel]->(n)-[:Rel]->(n3)");
+            String submit = "MATCH (n:Y) where n.TestId IN $ids WITH n ORDER BY n.TestId WITH collect(n) as nodes " +
+                    "CALL splitter.submit(nodes, {batchSize: 1, relationshipTypes: [\"Rel\"]}) YIELD jobId RETURN jobId";
+
+            // the running job waits for the lock of its first source node
+            Transaction blocking = blockingSession.beginTransaction();
+            blocking.run("MATCH (n:Y {TestId: 1}) SET n.Blocked = true").consume();
+            long running = session.run(submit, Values.parameters("ids", Arrays.asList(1, 2))).single().get("jobId").asLong();
+            waitForState(session, running, "running");
+            long queued = session.run(submit, Values.parameters("ids", Collections.singletonList(3))).single().get("jobId").asLong();
+            assertEquals("queued", jobState(session, queued));
+
+            // the queue is full
+            ClientException rejected = assertThrows(ClientException.class,
+                    () -> session.run(submit, Values.parameters("ids", Collections.singletonList(3))).list());
+            assertThat(rejected.getMessage()).contains("jobs are already waiting");
+
+            // a waiting job is removed from the queue at once
+            assertEquals("cancelled", session.run("CALL splitter.cancel($jobId)", Values.parameters("jobId", queued)).single().get("state").asString());
+
+            // a running job commits its current batch and stops before the next one
+            assertEquals("running", session.run("CALL splitter.cancel($jobId)", Values.parameters("jobId", running)).single().get("state").asString());
+            blocking.failure();
+            blocking.close();
+            Record job = waitForState(session, running, "cancelled");
+            assertEquals(1, job.get("processedNodes").asLong());
+            assertEquals(1, job.get("batches").asLong());
+
+            assertEquals(2, session.run("MATCH (n:Y) where n.TestId = 1 return n").list().size());
+            assertEquals(1, session.run("MATCH (n:Y) where n.TestId = 2 return n").list().size());
+            assertEquals(1, session.run("MATCH (n:Y) where n.TestId = 3 return n").list().size());
+            assertEquals(0, session.run("CALL splitter.job($jobId) YIELD processedNodes RETURN processedNodes", Values.parameters("jobId", queued)).single().get("processedNodes").asLong());
+        }
+    }
+
+    private static String jobState(Session session, long jobId) {
+        return session.run("CALL splitter.job($jobId) YIELD state RETURN state", Values.parameters("jobId", jobId)).single().get("state").asString();
+    }
+
+    private static Record waitForState(Session session, long jobId, String state) throws InterruptedException {
+        Record job = null;
+        for (int i = 0; i < 100; i++) {
+            job = session.run("CALL splitter.job($jobId)", Values.parameters("jobId", jobId)).single();
+            if (job.get("state").asString().equals(state))
+                break;
+            Thread.sleep(100);
+        }
+        assertEquals(state, job.get("state").asString());
+        return job;
+    }
 }
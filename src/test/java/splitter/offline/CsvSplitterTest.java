@@ -0,0 +1,97 @@
+package splitter.offline;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CsvSplitterTest {
+    @Test
+    public void splitCsvTest(@TempDir Path directory) throws IOException {
+        Path nodes = directory.resolve("input-nodes.csv");
+        Path relationships = directory.resolve("input-relationships.csv");
+        Files.write(nodes, Arrays.asList(
+                "id:ID,name,:LABEL",
+                "1,\"hub, first\",A",
+                "2,second,B",
+                "3,third,B",
+                "4,fourth,B"));
+        Files.write(relationships, Arrays.asList(
+                ":START_ID,:END_ID,:TYPE,weight:int",
+                "2,1,Rel,101",
+                "3,1,Rel,102",
+                "1,2,Rel,201",
+                "1,3,Rel,202",
+                "1,4,OtherRel,301"));
+
+        Map<String, String> options = new HashMap<>();
+        options.put("nodes", nodes.toString());
+        options.put("relationships", relationships.toString());
+        options.put("output", directory.resolve("output").toString());
+        options.put("label", "A");
+        options.put("relationshipTypes", "Rel,SecondRel");
+        options.put("indexProperty", "SplitId");
+        //spill every two records to exercise merging of sorted files
+        options.put("sortBuffer", "2");
+        CsvSplitter splitter = new CsvSplitter(options);
+        splitter.split();
+
+        assertEquals(1, splitter.getSplitNodes());
+        assertEquals(4, splitter.getCreatedNodes());
+        assertEquals(4, splitter.getCreatedRelationships());
+
+        List<String> outputNodes = Files.readAllLines(directory.resolve("output").resolve("nodes.csv"));
+        assertEquals("id:ID,name,:LABEL,SplitId:int", outputNodes.get(0));
+        assertThat(outputNodes).contains("2,second,B,", "1_0,\"hub, first\",A,0", "1_3,\"hub, first\",A,3");
+        assertEquals(8, outputNodes.size());
+
+        List<String> outputRelationships = Files.readAllLines(directory.resolve("output").resolve("relationships.csv"));
+        //4 links, 4 relationships moved to created nodes and OtherRel copied to each of 4 created nodes
+        assertEquals(13, outputRelationships.size());
+        assertThat(outputRelationships).contains("2,1_0,Rel,101", "1_0,1_2,Rel,101", "1_2,2,Rel,201", "1_1,4,OtherRel,301");
+        assertThat(outputRelationships).noneMatch(line -> line.startsWith("1,") || line.contains(",1,"));
+    }
+
+    @Test
+    public void createdIdCollisionTest(@TempDir Path directory) throws IOException {
+        Path nodes = directory.resolve("input-nodes.csv");
+        Path relationships = directory.resolve("input-relationships.csv");
+        Files.write(nodes, Arrays.asList(
+                "id:ID,:LABEL",
+                "1,A",
+                "1_1,B",
+                "1_01,B"));
+        Files.write(relationships, Arrays.asList(
+                ":START_ID,:END_ID,:TYPE",
+                "1_1,1,Rel",
+                "1,1_1,Rel"));
+
+        Map<String, String> options = new HashMap<>();
+        options.put("nodes", nodes.toString());
+        options.put("relationships", relationships.toString());
+        options.put("output", directory.resolve("output").toString());
+        options.put("label", "A");
+        options.put("relationshipTypes", "Rel");
+        RuntimeException e = assertThrows(RuntimeException.class, () -> new CsvSplitter(options).split());
+        assertEquals("Node 1_1 has the id of a node created by splitting node 1, use another idSeparator", e.getMessage());
+
+        options.put("idSeparator", "#");
+        CsvSplitter splitter = new CsvSplitter(options);
+        splitter.split();
+        assertEquals(2, splitter.getCreatedNodes());
+        List<String> outputNodes = Files.readAllLines(directory.resolve("output").resolve("nodes.csv"));
+        assertThat(outputNodes).contains("1_1,B", "1_01,B", "1#0,A", "1#1,A");
+        List<String> outputRelationships = Files.readAllLines(directory.resolve("output").resolve("relationships.csv"));
+        assertThat(outputRelationships).contains("1_1,1#0,Rel", "1#0,1#1,Rel", "1#1,1_1,Rel");
+    }
+}